@@ -0,0 +1,79 @@
+package fm.feed.android.react;
+
+import com.facebook.react.bridge.WritableMap;
+import com.google.gson.JsonObject;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares ModelSerializer with the Gson -> String -> JSONObject -> map path it
+ * replaced, for a station and a play's metadata at several payload sizes. Both
+ * write into JavaOnlyMap and JavaOnlyArray, so the numbers measure the conversion
+ * rather than the bridge.
+ *
+ * Not part of the unit tests - run with ./gradlew jmh, which adds the gc profiler
+ * so allocations per operation are reported next to throughput.
+ * ModelSerializerTest checks that both paths produce the same maps.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ConversionBenchmark {
+
+    // audio files in the station, and extra fields in the metadata
+    @Param({ "1", "10", "100" })
+    public int size;
+
+    private ConversionFixtures.StationModel station;
+    private JsonObject metadata;
+
+    @Setup
+    public void setUp() {
+        Utils.setWritableFactory(ConversionFixtures.JAVA_ONLY);
+        station = ConversionFixtures.StationModel.create(size);
+        metadata = ConversionFixtures.metadata(size);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Utils.setWritableFactory(null);
+    }
+
+    @Benchmark
+    public WritableMap stationModelSerializer() throws JSONException {
+        return ModelSerializer.toMap(station);
+    }
+
+    @Benchmark
+    public WritableMap stationLegacy() throws JSONException {
+        return ConversionFixtures.legacyToMap(station);
+    }
+
+    @Benchmark
+    public WritableMap metadataModelSerializer() throws JSONException {
+        return ModelSerializer.toMap(metadata);
+    }
+
+    @Benchmark
+    public WritableMap metadataLegacy() throws JSONException {
+        return ConversionFixtures.legacyToMap(metadata);
+    }
+
+}
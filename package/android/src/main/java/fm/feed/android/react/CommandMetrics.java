@@ -0,0 +1,88 @@
+package fm.feed.android.react;
+
+import android.os.SystemClock;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.Locale;
+
+/**
+ * Measures how long each kind of player command takes from the moment it
+ * arrives from javascript until the SDK confirms it (play -> PLAYING state,
+ * setActiveStation -> music queued, skip -> next play started, ...).
+ *
+ * Only the oldest unconfirmed command of each type is timed, so a burst of
+ * identical commands is measured from the first one.
+ */
+class CommandMetrics {
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[PlayerCommandQueue.Type.values().length];
+    private final long[] pendingSince = new long[PlayerCommandQueue.Type.values().length];
+    private final long[] cancelled = new long[PlayerCommandQueue.Type.values().length];
+
+    public CommandMetrics() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * A command has arrived from javascript.
+     */
+    public synchronized void arrived(PlayerCommandQueue.Type type) {
+        if (pendingSince[type.ordinal()] == 0) {
+            pendingSince[type.ordinal()] = SystemClock.elapsedRealtime();
+        }
+    }
+
+    /**
+     * The SDK has confirmed the effect of a command of the given type.
+     */
+    public void confirmed(PlayerCommandQueue.Type type) {
+        long since;
+
+        synchronized (this) {
+            since = pendingSince[type.ordinal()];
+            pendingSince[type.ordinal()] = 0;
+        }
+
+        if (since != 0) {
+            histograms[type.ordinal()].record(SystemClock.elapsedRealtime() - since);
+        }
+    }
+
+    /**
+     * A command will never be confirmed (it was dropped, coalesced away or failed).
+     */
+    public synchronized void cancelled(PlayerCommandQueue.Type type) {
+        if (pendingSince[type.ordinal()] != 0) {
+            pendingSince[type.ordinal()] = 0;
+            cancelled[type.ordinal()]++;
+        }
+    }
+
+    public synchronized void reset() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i].reset();
+            pendingSince[i] = 0;
+            cancelled[i] = 0;
+        }
+    }
+
+    /**
+     * Return a map from command name to its latency count, min, max, mean and
+     * p50/p90/p95/p99 in milliseconds.
+     */
+    public synchronized WritableMap toMap() {
+        WritableMap map = Arguments.createMap();
+        for (PlayerCommandQueue.Type type : PlayerCommandQueue.Type.values()) {
+            WritableMap entry = histograms[type.ordinal()].toMap();
+            entry.putDouble("cancelled", cancelled[type.ordinal()]);
+            entry.putBoolean("pending", pendingSince[type.ordinal()] != 0);
+            map.putMap(type.name().toLowerCase(Locale.US), entry);
+        }
+        return map;
+    }
+
+}
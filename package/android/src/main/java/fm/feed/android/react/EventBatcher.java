@@ -0,0 +1,241 @@
+package fm.feed.android.react;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReactContext;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Collects events bound for javascript and emits them as a single ordered
+ * 'event-batch' event per module, either once per display frame or after a
+ * fixed window.
+ *
+ * For event types that only describe current state (see COALESCED_EVENTS), only
+ * the latest instance queued in a batch by the same module is kept: an earlier
+ * instance with the same namespace and base name is dropped, and the new one
+ * takes its place at the end of the batch, after everything queued before it.
+ *
+ * Events named 'RNFMAudioPlayer:state-change' (see Utils.moduleEvent) are batched
+ * into 'RNFMAudioPlayer:event-batch', which looks like:
+ *
+ * {
+ *   events: [ { name: 'state-change', params: { ... } }, ... ]
+ * }
+ */
+class EventBatcher {
+
+    public static final String BATCH_EVENT = "event-batch";
+    public static final String NAMESPACE_SEPARATOR = ":";
+
+    public enum FlushPolicy {
+        // no batching - every event is emitted as soon as it is sent
+        IMMEDIATE,
+        // flush on the next display frame
+        FRAME,
+        // flush a fixed number of milliseconds after the first event in a batch
+        WINDOW
+    }
+
+    private static final Set<String> COALESCED_EVENTS = new HashSet<>(Arrays.asList(
+            "elapse", "state-change", "progress-anchor"));
+
+    // flush right away once this many events are waiting
+    private static final int MAX_BATCH_SIZE = 64;
+
+    private static final class PendingEvent {
+        // the module that sent the event ("" when the name has no namespace),
+        // and the event's name within that module
+        final String namespace;
+        final String baseName;
+        final WritableMap params;
+
+        PendingEvent(String eventName, WritableMap params) {
+            this.namespace = namespaceOf(eventName);
+            this.baseName = baseName(eventName);
+            this.params = params;
+        }
+
+        boolean sameEvent(PendingEvent other) {
+            return namespace.equals(other.namespace) && baseName.equals(other.baseName);
+        }
+    }
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Object flushLock = new Object();
+
+    private volatile FlushPolicy policy = FlushPolicy.IMMEDIATE;
+    private long windowMs = 16;
+
+    private ReactContext reactContext;
+    private List<PendingEvent> pending = new ArrayList<>();
+    private boolean flushScheduled = false;
+
+    private final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            flush();
+        }
+    };
+
+    private final Runnable flushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private final Runnable postFrameCallback = new Runnable() {
+        @Override
+        public void run() {
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+        }
+    };
+
+    public FlushPolicy getPolicy() {
+        return policy;
+    }
+
+    public void configure(FlushPolicy policy, long windowMs) {
+        synchronized (this) {
+            this.windowMs = (windowMs > 0) ? windowMs : 16;
+        }
+
+        FlushPolicy previous = this.policy;
+        this.policy = policy;
+
+        if ((previous != FlushPolicy.IMMEDIATE) && (policy == FlushPolicy.IMMEDIATE)) {
+            // don't strand anything queued under the old policy
+            flush();
+        }
+    }
+
+    /**
+     * Queue an event. With the IMMEDIATE policy the event is emitted right away.
+     */
+    public void send(ReactContext reactContext, String eventName, @Nullable WritableMap params) {
+        FlushPolicy policy = this.policy;
+
+        if (policy == FlushPolicy.IMMEDIATE) {
+            emit(reactContext, eventName, params);
+            return;
+        }
+
+        boolean flushNow = false;
+
+        synchronized (this) {
+            this.reactContext = reactContext;
+
+            PendingEvent event = new PendingEvent(eventName, params);
+
+            if (COALESCED_EVENTS.contains(event.baseName)) {
+                for (int i = pending.size() - 1; i >= 0; i--) {
+                    if (pending.get(i).sameEvent(event)) {
+                        pending.remove(i);
+                        break;
+                    }
+                }
+            }
+
+            pending.add(event);
+
+            if (pending.size() >= MAX_BATCH_SIZE) {
+                flushNow = true;
+            } else if (!flushScheduled) {
+                flushScheduled = true;
+                if (policy == FlushPolicy.FRAME) {
+                    mainHandler.post(postFrameCallback);
+                } else {
+                    mainHandler.postDelayed(flushRunnable, windowMs);
+                }
+            }
+        }
+
+        if (flushNow) {
+            flush();
+        }
+    }
+
+    /**
+     * Emit everything queued so far as a single batch event.
+     */
+    public void flush() {
+        // keeps batches from concurrent flushes in order
+        synchronized (flushLock) {
+            flushPending();
+        }
+    }
+
+    private void flushPending() {
+        List<PendingEvent> events;
+        ReactContext context;
+
+        synchronized (this) {
+            flushScheduled = false;
+            mainHandler.removeCallbacks(flushRunnable);
+
+            if (pending.isEmpty()) {
+                return;
+            }
+
+            events = pending;
+            context = reactContext;
+            pending = new ArrayList<>();
+        }
+
+        // one batch per module, each in the order its events were sent
+        Map<String, WritableArray> batches = new LinkedHashMap<>();
+        for (PendingEvent event : events) {
+            WritableArray array = batches.get(event.namespace);
+            if (array == null) {
+                array = Arguments.createArray();
+                batches.put(event.namespace, array);
+            }
+
+            WritableMap entry = Arguments.createMap();
+            entry.putString("name", event.baseName);
+            if (event.params != null) {
+                entry.putMap("params", event.params);
+            }
+            array.pushMap(entry);
+        }
+
+        for (Map.Entry<String, WritableArray> batch : batches.entrySet()) {
+            WritableMap params = Arguments.createMap();
+            params.putArray("events", batch.getValue());
+            emit(context, batch.getKey().isEmpty() ? BATCH_EVENT : batch.getKey() + NAMESPACE_SEPARATOR + BATCH_EVENT,
+                    params);
+        }
+    }
+
+    private static String namespaceOf(String eventName) {
+        int separator = eventName.indexOf(NAMESPACE_SEPARATOR);
+        return (separator < 0) ? "" : eventName.substring(0, separator);
+    }
+
+    private static String baseName(String eventName) {
+        int separator = eventName.indexOf(NAMESPACE_SEPARATOR);
+        return (separator < 0) ? eventName : eventName.substring(separator + 1);
+    }
+
+    private static void emit(ReactContext reactContext, String eventName, @Nullable WritableMap params) {
+        reactContext
+                .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                .emit(eventName, params);
+    }
+
+}
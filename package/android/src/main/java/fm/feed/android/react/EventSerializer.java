@@ -0,0 +1,122 @@
+package fm.feed.android.react;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds and sends a module's events on a background thread, so SDK callbacks
+ * on the main thread only copy what they need from the player and return.
+ *
+ * Tasks run one at a time, in the order they were posted. Events emitted from
+ * any other thread are posted here as well, so javascript receives events in
+ * the order the callbacks that produced them ran.
+ *
+ * The time each callback spends on the main thread, and the time each task
+ * takes here, are recorded in microseconds.
+ */
+class EventSerializer {
+
+    private final String threadName;
+    private final Map<String, LatencyHistogram> callbacks = new TreeMap<>();
+    private final LatencyHistogram tasks = new LatencyHistogram();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private Handler handler;
+
+    public EventSerializer(String threadName) {
+        this.threadName = threadName;
+    }
+
+    /**
+     * Run the task on the serializer thread, after every task posted before it.
+     */
+    public void post(final Runnable task) {
+        queued.incrementAndGet();
+        handler().post(new Runnable() {
+            @Override
+            public void run() {
+                queued.decrementAndGet();
+
+                long startedAt = System.nanoTime();
+                task.run();
+                tasks.record((System.nanoTime() - startedAt) / 1000);
+            }
+        });
+    }
+
+    public boolean isCurrentThread() {
+        return Looper.myLooper() == handler().getLooper();
+    }
+
+    /**
+     * Record how long, in microseconds, the named callback took since startedAt
+     * (a System.nanoTime() value).
+     */
+    public void callbackFinished(String callback, long startedAt) {
+        long micros = (System.nanoTime() - startedAt) / 1000;
+
+        LatencyHistogram histogram;
+        synchronized (callbacks) {
+            histogram = callbacks.get(callback);
+            if (histogram == null) {
+                histogram = new LatencyHistogram();
+                callbacks.put(callback, histogram);
+            }
+        }
+        histogram.record(micros);
+    }
+
+    /**
+     * Return { callbacks: { name: { count, min, max, mean, p50, ... }, ... },
+     * serialization: { ... }, queued }, with times in microseconds.
+     */
+    public WritableMap getStats() {
+        WritableMap callbackMap = Arguments.createMap();
+        synchronized (callbacks) {
+            for (Map.Entry<String, LatencyHistogram> entry : callbacks.entrySet()) {
+                callbackMap.putMap(entry.getKey(), entry.getValue().toMap());
+            }
+        }
+
+        WritableMap map = Arguments.createMap();
+        map.putMap("callbacks", callbackMap);
+        map.putMap("serialization", tasks.toMap());
+        map.putInt("queued", queued.get());
+        return map;
+    }
+
+    public void resetStats() {
+        synchronized (callbacks) {
+            callbacks.clear();
+        }
+        tasks.reset();
+    }
+
+    /**
+     * Stop the serializer thread once the work already posted to it has run.
+     * Anything posted afterwards is dropped.
+     */
+    public synchronized void quit() {
+        if (handler != null) {
+            Utils.quitSafely(handler.getLooper());
+        }
+    }
+
+    private synchronized Handler handler() {
+        if (handler == null) {
+            HandlerThread thread = new HandlerThread(threadName);
+            thread.start();
+            handler = new Handler(thread.getLooper());
+        }
+        return handler;
+    }
+
+}
@@ -0,0 +1,293 @@
+package fm.feed.android.react;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, size-capped spool of logged events, kept in a memory-mapped
+ * file so that events logged while the player is offline survive process death.
+ *
+ * File layout:
+ *
+ *   header:  int magic, int version, int readOffset, int writeOffset
+ *   records: int payloadLength, int crc32(payload), payload
+ *   payload: int eventLength, event (utf-8), params json (utf-8)
+ *
+ * A record is written before writeOffset is advanced past it, and readOffset
+ * is advanced as records are consumed, so a crash loses at most the record
+ * being written. Once everything has been read, the spool compacts itself
+ * back to an empty file.
+ *
+ * The capacity only limits new records. A file left larger by an earlier spool
+ * with a bigger capacity is mapped whole, so none of its records are lost.
+ */
+class EventSpool {
+
+    public final static String TAG = EventSpool.class.getName();
+
+    private static final int MAGIC = 0x52464d53; // 'RFMS'
+    private static final int VERSION = 1;
+
+    private static final int READ_OFFSET_POSITION = 8;
+    private static final int WRITE_OFFSET_POSITION = 12;
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    public static final class Record {
+        public final String event;
+        public final String params;
+
+        Record(String event, String params) {
+            this.event = event;
+            this.params = params;
+        }
+    }
+
+    private final File file;
+    private final int capacity;
+    private MappedByteBuffer buffer;
+    private int readOffset;
+    private int writeOffset;
+
+    public EventSpool(File file, int capacity) {
+        this.file = file;
+        this.capacity = Math.max(capacity, HEADER_SIZE + RECORD_HEADER_SIZE);
+    }
+
+    /**
+     * Queue an event at the end of the spool. Returns false if there is
+     * no room for it.
+     */
+    public synchronized boolean append(String event, String params) {
+        if (!open()) {
+            return false;
+        }
+
+        byte[] eventBytes = event.getBytes(UTF8);
+        byte[] paramsBytes = params.getBytes(UTF8);
+        int payloadLength = 4 + eventBytes.length + paramsBytes.length;
+        int recordLength = RECORD_HEADER_SIZE + payloadLength;
+
+        if (writeOffset + recordLength > capacity) {
+            compact();
+            if (writeOffset + recordLength > capacity) {
+                return false;
+            }
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(intBytes(eventBytes.length));
+        crc.update(eventBytes);
+        crc.update(paramsBytes);
+
+        buffer.position(writeOffset);
+        buffer.putInt(payloadLength);
+        buffer.putInt((int) crc.getValue());
+        buffer.putInt(eventBytes.length);
+        buffer.put(eventBytes);
+        buffer.put(paramsBytes);
+
+        writeOffset += recordLength;
+        buffer.putInt(WRITE_OFFSET_POSITION, writeOffset);
+
+        return true;
+    }
+
+    /**
+     * Return the oldest record in the spool without removing it, or null
+     * if the spool is empty.
+     */
+    public synchronized Record peek() {
+        if (!open() || readOffset >= writeOffset) {
+            return null;
+        }
+
+        buffer.position(readOffset + RECORD_HEADER_SIZE);
+        int eventLength = buffer.getInt();
+        int payloadLength = buffer.getInt(readOffset);
+
+        byte[] eventBytes = new byte[eventLength];
+        byte[] paramsBytes = new byte[payloadLength - 4 - eventLength];
+        buffer.get(eventBytes);
+        buffer.get(paramsBytes);
+
+        return new Record(new String(eventBytes, UTF8), new String(paramsBytes, UTF8));
+    }
+
+    /**
+     * Drop the oldest record, compacting the spool once it is empty.
+     */
+    public synchronized void remove() {
+        if (!open() || readOffset >= writeOffset) {
+            return;
+        }
+
+        readOffset += RECORD_HEADER_SIZE + buffer.getInt(readOffset);
+        buffer.putInt(READ_OFFSET_POSITION, readOffset);
+
+        if (readOffset >= writeOffset) {
+            compact();
+            buffer.force();
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return !open() || readOffset >= writeOffset;
+    }
+
+    public synchronized int sizeInBytes() {
+        return open() ? writeOffset - readOffset : 0;
+    }
+
+    /**
+     * Flush pending writes to disk.
+     */
+    public synchronized void sync() {
+        if (buffer != null) {
+            buffer.force();
+        }
+    }
+
+    /**
+     * Stop using the spool and delete its file.
+     */
+    public synchronized void delete() {
+        buffer = null;
+        if (!file.delete() && file.exists()) {
+            Log.w(TAG, "Unable to delete event spool " + file);
+        }
+    }
+
+    /**
+     * Move unread records to the front of the file.
+     */
+    private void compact() {
+        int unread = writeOffset - readOffset;
+
+        if (unread > 0 && readOffset > HEADER_SIZE) {
+            byte[] bytes = new byte[unread];
+            buffer.position(readOffset);
+            buffer.get(bytes);
+            buffer.position(HEADER_SIZE);
+            buffer.put(bytes);
+        }
+
+        // the write offset shrinks first so a crash never leaves the read offset past it
+        writeOffset = HEADER_SIZE + unread;
+        buffer.putInt(WRITE_OFFSET_POSITION, writeOffset);
+        readOffset = HEADER_SIZE;
+        buffer.putInt(READ_OFFSET_POSITION, readOffset);
+    }
+
+    private boolean open() {
+        if (buffer != null) {
+            return true;
+        }
+
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                long length = raf.length();
+                if (length < capacity) {
+                    raf.setLength(capacity);
+                    length = capacity;
+                }
+
+                FileChannel channel = raf.getChannel();
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            } finally {
+                // the mapping stays valid after the file is closed
+                raf.close();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to open event spool " + file, e);
+            buffer = null;
+            return false;
+        }
+
+        recover();
+        return true;
+    }
+
+    /**
+     * Validate the header and every record after the read offset, truncating the
+     * spool at the first damaged record.
+     */
+    private void recover() {
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            reset();
+            return;
+        }
+
+        readOffset = buffer.getInt(READ_OFFSET_POSITION);
+        writeOffset = buffer.getInt(WRITE_OFFSET_POSITION);
+
+        if (readOffset < HEADER_SIZE || writeOffset > buffer.capacity() || readOffset > writeOffset) {
+            reset();
+            return;
+        }
+
+        int offset = readOffset;
+        while (offset < writeOffset) {
+            if (!isValidRecord(offset)) {
+                Log.w(TAG, "Discarding damaged event spool records after offset " + offset);
+                break;
+            }
+            offset += RECORD_HEADER_SIZE + buffer.getInt(offset);
+        }
+
+        if (offset != writeOffset) {
+            writeOffset = offset;
+            buffer.putInt(WRITE_OFFSET_POSITION, writeOffset);
+        }
+    }
+
+    private boolean isValidRecord(int offset) {
+        if (offset + RECORD_HEADER_SIZE + 4 > writeOffset) {
+            return false;
+        }
+
+        int payloadLength = buffer.getInt(offset);
+        if (payloadLength < 4 || offset + RECORD_HEADER_SIZE + payloadLength > writeOffset) {
+            return false;
+        }
+
+        int eventLength = buffer.getInt(offset + RECORD_HEADER_SIZE);
+        if (eventLength < 0 || eventLength > payloadLength - 4) {
+            return false;
+        }
+
+        byte[] payload = new byte[payloadLength];
+        buffer.position(offset + RECORD_HEADER_SIZE);
+        buffer.get(payload);
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue() == buffer.getInt(offset + 4);
+    }
+
+    private void reset() {
+        readOffset = HEADER_SIZE;
+        writeOffset = HEADER_SIZE;
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(READ_OFFSET_POSITION, readOffset);
+        buffer.putInt(WRITE_OFFSET_POSITION, writeOffset);
+    }
+
+    private static byte[] intBytes(int value) {
+        return new byte[] {
+                (byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value
+        };
+    }
+
+}
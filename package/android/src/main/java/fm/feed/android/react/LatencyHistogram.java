@@ -0,0 +1,104 @@
+package fm.feed.android.react;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+/**
+ * Fixed-size histogram of latencies in milliseconds. Buckets grow
+ * geometrically (about 10% apart) from 1ms up to about 10 minutes, so percentiles
+ * are accurate to within a bucket and memory use never grows.
+ */
+class LatencyHistogram {
+
+    private static final double GROWTH = 1.1;
+    private static final int BUCKETS = 125;
+    private static final long[] UPPER_BOUNDS = new long[BUCKETS];
+
+    static {
+        double bound = 1;
+        for (int i = 0; i < BUCKETS; i++) {
+            UPPER_BOUNDS[i] = (long) Math.ceil(bound);
+            bound = Math.max(bound * GROWTH, UPPER_BOUNDS[i] + 1);
+        }
+    }
+
+    private final long[] counts = new long[BUCKETS + 1];
+    private long count;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    public synchronized void record(long latencyMs) {
+        if (latencyMs < 0) {
+            latencyMs = 0;
+        }
+
+        counts[bucketFor(latencyMs)]++;
+        count++;
+        sum += latencyMs;
+        min = Math.min(min, latencyMs);
+        max = Math.max(max, latencyMs);
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * Return the latency below which the given fraction (0..1) of samples fall.
+     */
+    public synchronized long percentile(double fraction) {
+        if (count == 0) {
+            return 0;
+        }
+
+        long target = (long) Math.ceil(fraction * count);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return (i < BUCKETS) ? Math.min(UPPER_BOUNDS[i], max) : max;
+            }
+        }
+        return max;
+    }
+
+    public synchronized void reset() {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = 0;
+        }
+        count = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    public synchronized WritableMap toMap() {
+        WritableMap map = Arguments.createMap();
+        map.putDouble("count", count);
+        map.putDouble("min", (count > 0) ? min : 0);
+        map.putDouble("max", max);
+        map.putDouble("mean", (count > 0) ? (double) sum / count : 0);
+        map.putDouble("p50", percentile(0.5));
+        map.putDouble("p90", percentile(0.9));
+        map.putDouble("p95", percentile(0.95));
+        map.putDouble("p99", percentile(0.99));
+        return map;
+    }
+
+    private static int bucketFor(long latencyMs) {
+        int low = 0;
+        int high = BUCKETS;
+        // first bucket whose upper bound is >= latency; BUCKETS means overflow
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (UPPER_BOUNDS[mid] < latencyMs) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+}
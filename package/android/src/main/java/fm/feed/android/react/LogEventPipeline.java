@@ -0,0 +1,330 @@
+package fm.feed.android.react;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+
+import org.json.JSONObject;
+
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Takes 'logEvent' calls off the native modules thread. Events go into a
+ * bounded lock-free queue, and a background thread converts them to JSON and
+ * hands them to the player in batches.
+ *
+ * When the queue is full, the overflow policy decides whether the oldest
+ * queued event is dropped, the new event is dropped, or the caller waits
+ * for room.
+ *
+ * While the player is unavailable, events are written to an on-disk EventSpool
+ * instead. Once the player is available again, spooled events are replayed in
+ * order at a limited rate, while newly logged events go straight to the player.
+ * A spool that is disabled keeps being replayed until it is empty, and only
+ * then is its file deleted.
+ */
+class LogEventPipeline {
+
+    public final static String TAG = LogEventPipeline.class.getName();
+
+    public static final int DEFAULT_CAPACITY = 1000;
+    public static final int BATCH_SIZE = 50;
+    public static final int DEFAULT_REPLAY_EVENTS_PER_SECOND = 10;
+
+    public enum OverflowPolicy {
+        DROP_OLDEST,
+        DROP_NEWEST,
+        BLOCK
+    }
+
+    public interface Sink {
+        /**
+         * Return true when events can be forwarded right now.
+         */
+        boolean isAvailable();
+
+        /**
+         * Forward an event. Returns false if the event could not be delivered.
+         */
+        boolean logEvent(String event, JSONObject params);
+    }
+
+    private static final class Entry {
+        final String event;
+        final ReadableMap params;
+
+        Entry(String event, ReadableMap params) {
+            this.event = event;
+            this.params = params;
+        }
+    }
+
+    private final Sink sink;
+    private final Queue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong flushed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong spooled = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+
+    private volatile OverflowPolicy policy = OverflowPolicy.DROP_OLDEST;
+    private volatile int capacity = DEFAULT_CAPACITY;
+
+    private Handler handler;
+
+    // only touched on the handler thread
+    private EventSpool spool;
+    // the spool being replayed: the current one, or a disabled one that isn't empty yet
+    private EventSpool backlog;
+    private int replayEventsPerSecond = DEFAULT_REPLAY_EVENTS_PER_SECOND;
+    private boolean replayScheduled = false;
+
+    private final Runnable drain = new Runnable() {
+        @Override
+        public void run() {
+            drainScheduled.set(false);
+
+            while (drainBatch() == BATCH_SIZE) {
+                // keep going until the queue is empty
+            }
+        }
+    };
+
+    private final Runnable replay = new Runnable() {
+        @Override
+        public void run() {
+            replayScheduled = false;
+
+            if (backlog == null || !sink.isAvailable()) {
+                return;
+            }
+
+            EventSpool.Record record = backlog.peek();
+            if (record == null) {
+                return;
+            }
+
+            try {
+                if (sink.logEvent(record.event, new JSONObject(record.params))) {
+                    replayed.incrementAndGet();
+                } else {
+                    // try again once the player is back
+                    return;
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Unable to replay event " + record.event, e);
+                dropped.incrementAndGet();
+            }
+
+            backlog.remove();
+
+            if (backlog != spool && backlog.isEmpty()) {
+                // a disabled spool is done with
+                backlog.delete();
+                backlog = null;
+                return;
+            }
+
+            scheduleReplay();
+        }
+    };
+
+    public LogEventPipeline(Sink sink) {
+        this.sink = sink;
+    }
+
+    public void configure(OverflowPolicy policy, int capacity) {
+        this.policy = policy;
+        this.capacity = (capacity > 0) ? capacity : DEFAULT_CAPACITY;
+    }
+
+    /**
+     * Use the given spool (or none, when null) for events logged while the
+     * player is unavailable. A new spool on the same file, whatever its
+     * capacity, carries on with the records left in the previous one. With no
+     * spool, the previous one is still replayed until it is empty.
+     */
+    public void setSpool(final EventSpool spool, final int replayEventsPerSecond) {
+        handler().post(new Runnable() {
+            @Override
+            public void run() {
+                EventSpool previous = backlog;
+                if (previous != null) {
+                    previous.sync();
+                }
+
+                LogEventPipeline.this.spool = spool;
+                if (spool != null) {
+                    backlog = spool;
+                } else if (previous != null && previous.isEmpty()) {
+                    previous.delete();
+                    backlog = null;
+                }
+
+                LogEventPipeline.this.replayEventsPerSecond = (replayEventsPerSecond > 0)
+                        ? replayEventsPerSecond : DEFAULT_REPLAY_EVENTS_PER_SECOND;
+                scheduleReplay();
+            }
+        });
+    }
+
+    /**
+     * The player has become available, so start replaying any spooled events.
+     */
+    public void onAvailable() {
+        handler().post(new Runnable() {
+            @Override
+            public void run() {
+                scheduleReplay();
+            }
+        });
+    }
+
+    /**
+     * Queue an event for delivery. Returns false if the event was dropped.
+     */
+    public boolean enqueue(String event, ReadableMap params) {
+        for (;;) {
+            int n = size.get();
+
+            if (n < capacity) {
+                if (size.compareAndSet(n, n + 1)) {
+                    break;
+                }
+                continue;
+            }
+
+            switch (policy) {
+                case DROP_NEWEST:
+                    dropped.incrementAndGet();
+                    return false;
+
+                case DROP_OLDEST:
+                    if (queue.poll() != null) {
+                        size.decrementAndGet();
+                        dropped.incrementAndGet();
+                    }
+                    break;
+
+                case BLOCK:
+                    scheduleDrain();
+                    LockSupport.parkNanos(1000000L);
+                    break;
+            }
+        }
+
+        queue.offer(new Entry(event, params));
+        enqueued.incrementAndGet();
+        scheduleDrain();
+
+        return true;
+    }
+
+    public WritableMap getStats() {
+        WritableMap stats = Arguments.createMap();
+        stats.putDouble("enqueued", enqueued.get());
+        stats.putDouble("dropped", dropped.get());
+        stats.putDouble("flushed", flushed.get());
+        stats.putDouble("batches", batches.get());
+        stats.putDouble("spooled", spooled.get());
+        stats.putDouble("replayed", replayed.get());
+        stats.putInt("queued", size.get());
+        stats.putInt("capacity", capacity);
+        stats.putString("policy", policy.name().toLowerCase(Locale.US));
+        return stats;
+    }
+
+    private void scheduleDrain() {
+        if (drainScheduled.compareAndSet(false, true)) {
+            handler().post(drain);
+        }
+    }
+
+    // must be called on the handler thread
+    private void scheduleReplay() {
+        if (replayScheduled || backlog == null || backlog.isEmpty() || !sink.isAvailable()) {
+            return;
+        }
+
+        replayScheduled = true;
+        handler().postDelayed(replay, 1000 / replayEventsPerSecond);
+    }
+
+    /**
+     * Stop the pipeline's thread once the work already posted to it has run.
+     * Anything posted afterwards is dropped.
+     */
+    public synchronized void quit() {
+        if (handler != null) {
+            Utils.quitSafely(handler.getLooper());
+        }
+    }
+
+    private synchronized Handler handler() {
+        if (handler == null) {
+            HandlerThread thread = new HandlerThread("RNFMLogEvents", Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            handler = new Handler(thread.getLooper());
+        }
+        return handler;
+    }
+
+    private int drainBatch() {
+        int count = 0;
+        boolean wroteToSpool = false;
+
+        while (count < BATCH_SIZE) {
+            Entry entry = queue.poll();
+            if (entry == null) {
+                break;
+            }
+            size.decrementAndGet();
+            count++;
+
+            try {
+                JSONObject object = Utils.convertMapToJson(entry.params);
+
+                // while online, events go out right away, even with spooled ones
+                // still being replayed
+                if (sink.isAvailable() && sink.logEvent(entry.event, object)) {
+                    flushed.incrementAndGet();
+                } else if (spool != null && spool.append(entry.event, object.toString())) {
+                    spooled.incrementAndGet();
+                    wroteToSpool = true;
+                } else {
+                    dropped.incrementAndGet();
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Unable to log event " + entry.event, e);
+                dropped.incrementAndGet();
+            }
+        }
+
+        if (count > 0) {
+            batches.incrementAndGet();
+        }
+
+        if (wroteToSpool) {
+            spool.sync();
+            scheduleReplay();
+        }
+
+        return count;
+    }
+
+}
@@ -0,0 +1,173 @@
+package fm.feed.android.react;
+
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableMapKeySetIterator;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers which audio files javascript already holds the static details
+ * (title, artist, album, duration, metadata) of, so that a repeat play only
+ * needs to send the audio file id and the fields that change.
+ *
+ * Entries are evicted least-recently-played first once their estimated size
+ * passes the byte budget. Javascript only drops an entry when told to, via the
+ * evicted ids returned from add(), so both sides always agree on what is cached.
+ */
+class MetadataCache {
+
+    public static final int DEFAULT_MAX_BYTES = 512 * 1024;
+
+    // audio file id -> estimated size in bytes, in least-recently-played order
+    private final LinkedHashMap<String, Integer> sizes = new LinkedHashMap<>(16, 0.75f, true);
+    private boolean enabled = true;
+    private int maxBytes = DEFAULT_MAX_BYTES;
+    private long totalBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public synchronized void configure(boolean enabled, int maxBytes) {
+        this.enabled = enabled;
+        this.maxBytes = (maxBytes > 0) ? maxBytes : DEFAULT_MAX_BYTES;
+
+        if (!enabled) {
+            clear();
+        }
+    }
+
+    public synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Record a play of the given audio file, and return true if javascript
+     * already holds its details.
+     */
+    public synchronized boolean touch(String id) {
+        if (!enabled || sizes.get(id) == null) {
+            return false;
+        }
+
+        hits++;
+        return true;
+    }
+
+    /**
+     * Add an audio file whose details (of the given estimated size) are being
+     * sent to javascript, and return the ids of older entries evicted to make
+     * room for it.
+     */
+    public synchronized List<String> add(String id, int size) {
+        List<String> evicted = new ArrayList<>();
+        if (!enabled) {
+            return evicted;
+        }
+
+        misses++;
+
+        Integer previous = sizes.put(id, size);
+        totalBytes += size - ((previous != null) ? previous : 0);
+
+        Iterator<Map.Entry<String, Integer>> iterator = sizes.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Integer> entry = iterator.next();
+            if (entry.getKey().equals(id)) {
+                // always keep the file that's playing
+                continue;
+            }
+
+            totalBytes -= entry.getValue();
+            evicted.add(entry.getKey());
+            iterator.remove();
+            evictions++;
+        }
+
+        return evicted;
+    }
+
+    public synchronized void clear() {
+        sizes.clear();
+        totalBytes = 0;
+    }
+
+    public synchronized int size() {
+        return sizes.size();
+    }
+
+    public synchronized long sizeInBytes() {
+        return totalBytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Rough size of a map once it is held in javascript: two bytes per string
+     * character and eight per number or boolean, plus the keys.
+     */
+    static int estimateSize(String value) {
+        return (value != null) ? 2 * value.length() : 0;
+    }
+
+    static int estimateSize(ReadableMap map) {
+        int size = 0;
+        ReadableMapKeySetIterator iterator = map.keySetIterator();
+        while (iterator.hasNextKey()) {
+            String key = iterator.nextKey();
+            size += 2 * key.length();
+
+            switch (map.getType(key)) {
+                case String:
+                    size += 2 * map.getString(key).length();
+                    break;
+                case Map:
+                    size += estimateSize(map.getMap(key));
+                    break;
+                case Array:
+                    size += estimateSize(map.getArray(key));
+                    break;
+                default:
+                    size += 8;
+                    break;
+            }
+        }
+        return size;
+    }
+
+    private static int estimateSize(ReadableArray array) {
+        int size = 0;
+        for (int i = 0; i < array.size(); i++) {
+            switch (array.getType(i)) {
+                case String:
+                    size += 2 * array.getString(i).length();
+                    break;
+                case Map:
+                    size += estimateSize(array.getMap(i));
+                    break;
+                case Array:
+                    size += estimateSize(array.getArray(i));
+                    break;
+                default:
+                    size += 8;
+                    break;
+            }
+        }
+        return size;
+    }
+
+}
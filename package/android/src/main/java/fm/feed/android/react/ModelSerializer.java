@@ -0,0 +1,427 @@
+package fm.feed.android.react;
+
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.annotations.SerializedName;
+
+import org.json.JSONException;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Writes SDK model objects (Station, AudioFile metadata, ...) directly into
+ * bridge maps and arrays (see Utils.createMap), producing the same shape that
+ * Utils.toJson -> JSONObject -> Utils.convertJsonToMap used to produce,
+ * but without the intermediate String and JSONObject copies.
+ *
+ * Field lists are resolved once per class, following Gson's default rules
+ * (static, transient and synthetic fields are skipped, @SerializedName is honoured,
+ * null values are omitted).
+ */
+final class ModelSerializer {
+
+    private static final Map<Class<?>, ClassAdapter> sAdapters = new ConcurrentHashMap<>();
+
+    private ModelSerializer() {
+    }
+
+    public static WritableMap toMap(Object model) throws JSONException {
+        if (model == null) {
+            throw new JSONException("Cannot serialize null model to a map");
+        }
+
+        if (model instanceof JsonObject) {
+            return jsonObjectToMap((JsonObject) model);
+        }
+
+        if (model instanceof Map) {
+            return mapToMap((Map<?, ?>) model);
+        }
+
+        if (isScalar(model) || model instanceof Iterable || model.getClass().isArray()
+                || model instanceof JsonElement) {
+            throw new JSONException("Cannot serialize " + model.getClass().getName() + " to a map");
+        }
+
+        WritableMap map = Utils.createMap();
+        adapterFor(model.getClass()).write(model, map);
+        return map;
+    }
+
+    /**
+     * Deep hash of the serializable content of a model, computed with the same
+     * field rules as toMap() but without building any maps.
+     */
+    public static int contentHash(Object value) {
+        if (value == null || value instanceof JsonNull) {
+            return 0;
+        }
+
+        if (value instanceof JsonPrimitive) {
+            value = unwrap((JsonPrimitive) value);
+        }
+
+        if (value instanceof Number) {
+            return value.toString().hashCode();
+        } else if (value instanceof Enum) {
+            // Enum.hashCode() is the identity hash, which differs between runs
+            return ((Enum<?>) value).name().hashCode();
+        } else if (isScalar(value)) {
+            return value.hashCode();
+        } else if (value instanceof JsonObject) {
+            int hash = 0;
+            for (Map.Entry<String, JsonElement> entry : ((JsonObject) value).entrySet()) {
+                hash += entry.getKey().hashCode() ^ contentHash(entry.getValue());
+            }
+            return hash;
+        } else if (value instanceof Map) {
+            int hash = 0;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                hash += String.valueOf(entry.getKey()).hashCode() ^ contentHash(entry.getValue());
+            }
+            return hash;
+        } else if (value instanceof Iterable) {
+            int hash = 1;
+            for (Object item : (Iterable<?>) value) {
+                hash = 31 * hash + contentHash(item);
+            }
+            return hash;
+        } else if (value.getClass().isArray()) {
+            int hash = 1;
+            int length = Array.getLength(value);
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + contentHash(Array.get(value, i));
+            }
+            return hash;
+        } else {
+            return adapterFor(value.getClass()).hash(value);
+        }
+    }
+
+    /**
+     * Value of the model's field serialized under the given name, resolved with
+     * the same field rules as toMap(), or null if the model has no such field.
+     */
+    public static Object fieldValue(Object model, String name) {
+        if (model == null) {
+            return null;
+        }
+        return adapterFor(model.getClass()).get(model, name);
+    }
+
+    private static ClassAdapter adapterFor(Class<?> cls) {
+        ClassAdapter adapter = sAdapters.get(cls);
+        if (adapter == null) {
+            adapter = new ClassAdapter(cls);
+            sAdapters.put(cls, adapter);
+        }
+        return adapter;
+    }
+
+    private static boolean isScalar(Object value) {
+        return value instanceof String || value instanceof Character || value instanceof Boolean
+                || value instanceof Number || value instanceof Enum || value instanceof Date;
+    }
+
+    private static void putValue(WritableMap map, String key, Object value) {
+        if (value == null || value instanceof JsonNull) {
+            return;
+        }
+
+        if (value instanceof JsonPrimitive) {
+            value = unwrap((JsonPrimitive) value);
+        }
+
+        if (value instanceof String) {
+            map.putString(key, (String) value);
+        } else if (value instanceof Boolean) {
+            map.putBoolean(key, (Boolean) value);
+        } else if (value instanceof Number) {
+            putNumber(map, key, (Number) value);
+        } else if (value instanceof Character || value instanceof Date || value instanceof Enum) {
+            map.putString(key, scalarToString(value));
+        } else if (value instanceof JsonObject) {
+            map.putMap(key, jsonObjectToMap((JsonObject) value));
+        } else if (value instanceof JsonArray) {
+            map.putArray(key, jsonArrayToArray((JsonArray) value));
+            if (("option_values").equals(key)) {
+                map.putArray("options", jsonArrayToArray((JsonArray) value));
+            }
+        } else if (value instanceof Map) {
+            map.putMap(key, mapToMap((Map<?, ?>) value));
+        } else if (value instanceof Iterable || value.getClass().isArray()) {
+            map.putArray(key, toArray(value));
+            if (("option_values").equals(key)) {
+                map.putArray("options", toArray(value));
+            }
+        } else {
+            WritableMap child = Utils.createMap();
+            adapterFor(value.getClass()).write(value, child);
+            map.putMap(key, child);
+        }
+    }
+
+    private static void pushValue(WritableArray array, Object value) {
+        if (value == null || value instanceof JsonNull) {
+            // Gson wrote null elements, which JSONObject.NULL.toString() then sent as "null"
+            array.pushString("null");
+            return;
+        }
+
+        if (value instanceof JsonPrimitive) {
+            value = unwrap((JsonPrimitive) value);
+        }
+
+        if (value instanceof String) {
+            array.pushString((String) value);
+        } else if (value instanceof Boolean) {
+            array.pushBoolean((Boolean) value);
+        } else if (value instanceof Number) {
+            pushNumber(array, (Number) value);
+        } else if (value instanceof Character || value instanceof Date || value instanceof Enum) {
+            array.pushString(scalarToString(value));
+        } else if (value instanceof JsonObject) {
+            array.pushMap(jsonObjectToMap((JsonObject) value));
+        } else if (value instanceof JsonArray) {
+            array.pushArray(jsonArrayToArray((JsonArray) value));
+        } else if (value instanceof Map) {
+            array.pushMap(mapToMap((Map<?, ?>) value));
+        } else if (value instanceof Iterable || value.getClass().isArray()) {
+            array.pushArray(toArray(value));
+        } else {
+            WritableMap child = Utils.createMap();
+            adapterFor(value.getClass()).write(value, child);
+            array.pushMap(child);
+        }
+    }
+
+    // JSONObject parses integral values as Integer when they fit, otherwise as Long
+    // (which convertJsonToMap then sent as a string), and anything else as Double
+    // parsed from the number's shortest string form.
+
+    private static void putNumber(WritableMap map, String key, Number number) {
+        if (!isIntegral(number)) {
+            map.putDouble(key, toDouble(number));
+        } else if (fitsInt(number)) {
+            map.putInt(key, number.intValue());
+        } else {
+            map.putString(key, number.toString());
+        }
+    }
+
+    private static void pushNumber(WritableArray array, Number number) {
+        if (!isIntegral(number)) {
+            array.pushDouble(toDouble(number));
+        } else if (fitsInt(number)) {
+            array.pushInt(number.intValue());
+        } else {
+            array.pushString(number.toString());
+        }
+    }
+
+    // widening a float keeps its binary error (0.1f becomes 0.10000000149...), while
+    // the legacy path parsed the float's own string, "0.1"
+    private static double toDouble(Number number) {
+        if (number instanceof Float) {
+            return Double.parseDouble(number.toString());
+        }
+        return number.doubleValue();
+    }
+
+    private static boolean isIntegral(Number number) {
+        if (number instanceof Integer || number instanceof Long || number instanceof Short
+                || number instanceof Byte || number instanceof BigInteger) {
+            return true;
+        }
+
+        if (number instanceof Double || number instanceof Float || number instanceof BigDecimal) {
+            return false;
+        }
+
+        // Gson's LazilyParsedNumber and friends: decide the way JSONObject would
+        String str = number.toString();
+        return str.indexOf('.') < 0 && str.indexOf('e') < 0 && str.indexOf('E') < 0;
+    }
+
+    private static boolean fitsInt(Number number) {
+        if (number instanceof BigInteger) {
+            return ((BigInteger) number).bitLength() < 32;
+        }
+
+        try {
+            long l = Long.parseLong(number.toString());
+            return l >= Integer.MIN_VALUE && l <= Integer.MAX_VALUE;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static Object unwrap(JsonPrimitive primitive) {
+        if (primitive.isBoolean()) {
+            return primitive.getAsBoolean();
+        } else if (primitive.isNumber()) {
+            return primitive.getAsNumber();
+        } else {
+            return primitive.getAsString();
+        }
+    }
+
+    private static String scalarToString(Object value) {
+        if (value instanceof Enum) {
+            return enumName((Enum<?>) value);
+        } else if (value instanceof Date) {
+            // matches Gson's default date adapter
+            return DateFormat.getDateTimeInstance(DateFormat.DEFAULT, DateFormat.DEFAULT, Locale.US)
+                    .format((Date) value);
+        } else {
+            return value.toString();
+        }
+    }
+
+    private static String enumName(Enum<?> value) {
+        try {
+            SerializedName annotation = value.getDeclaringClass().getField(value.name())
+                    .getAnnotation(SerializedName.class);
+            if (annotation != null) {
+                return annotation.value();
+            }
+        } catch (NoSuchFieldException e) {
+            // fall through
+        }
+        return value.name();
+    }
+
+    private static WritableMap jsonObjectToMap(JsonObject object) {
+        WritableMap map = Utils.createMap();
+        for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+            putValue(map, entry.getKey(), entry.getValue());
+        }
+        return map;
+    }
+
+    private static WritableArray jsonArrayToArray(JsonArray jsonArray) {
+        WritableArray array = Utils.createArray();
+        for (JsonElement element : jsonArray) {
+            pushValue(array, element);
+        }
+        return array;
+    }
+
+    private static WritableMap mapToMap(Map<?, ?> source) {
+        WritableMap map = Utils.createMap();
+        for (Map.Entry<?, ?> entry : source.entrySet()) {
+            putValue(map, String.valueOf(entry.getKey()), entry.getValue());
+        }
+        return map;
+    }
+
+    private static WritableArray toArray(Object value) {
+        WritableArray array = Utils.createArray();
+        if (value instanceof Iterable) {
+            for (Object item : (Iterable<?>) value) {
+                pushValue(array, item);
+            }
+        } else {
+            int length = Array.getLength(value);
+            for (int i = 0; i < length; i++) {
+                pushValue(array, Array.get(value, i));
+            }
+        }
+        return array;
+    }
+
+    /**
+     * Serializable fields of a single model class, resolved once.
+     */
+    private static final class ClassAdapter {
+
+        private final String[] names;
+        private final Field[] fields;
+
+        ClassAdapter(Class<?> cls) {
+            List<String> names = new ArrayList<>();
+            List<Field> fields = new ArrayList<>();
+            Map<String, Boolean> seen = new HashMap<>();
+
+            for (Class<?> c = cls; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+                        continue;
+                    }
+
+                    SerializedName annotation = field.getAnnotation(SerializedName.class);
+                    String name = (annotation != null) ? annotation.value() : field.getName();
+                    if (seen.containsKey(name)) {
+                        continue;
+                    }
+
+                    field.setAccessible(true);
+                    seen.put(name, Boolean.TRUE);
+                    names.add(name);
+                    fields.add(field);
+                }
+            }
+
+            this.names = names.toArray(new String[0]);
+            this.fields = fields.toArray(new Field[0]);
+        }
+
+        void write(Object model, WritableMap map) {
+            for (int i = 0; i < fields.length; i++) {
+                Object value;
+                try {
+                    value = fields[i].get(model);
+                } catch (IllegalAccessException e) {
+                    continue;
+                }
+                putValue(map, names[i], value);
+            }
+        }
+
+        Object get(Object model, String name) {
+            for (int i = 0; i < names.length; i++) {
+                if (names[i].equals(name)) {
+                    try {
+                        return fields[i].get(model);
+                    } catch (IllegalAccessException e) {
+                        return null;
+                    }
+                }
+            }
+            return null;
+        }
+
+        int hash(Object model) {
+            int hash = 1;
+            for (int i = 0; i < fields.length; i++) {
+                Object value;
+                try {
+                    value = fields[i].get(model);
+                } catch (IllegalAccessException e) {
+                    continue;
+                }
+                hash = 31 * hash + contentHash(value);
+            }
+            return hash;
+        }
+    }
+
+}
@@ -0,0 +1,281 @@
+package fm.feed.android.react;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+
+import fm.feed.android.playersdk.State;
+import fm.feed.android.playersdk.models.Station;
+
+/**
+ * Runs player commands one at a time, in the order they were issued, on the
+ * main thread (where the SDK expects them).
+ *
+ * Commands that are still waiting to run are collapsed where possible:
+ * - a play or pause replaces a waiting play or pause at the end of the queue
+ * - a seek is added to a waiting seek at the end of the queue
+ * - a station change replaces a waiting station change at the end of the queue
+ * - a skip is ignored while another skip is waiting
+ *
+ * Commands that have already run are never collapsed with new ones.
+ *
+ * When a command's turn comes, it is dropped if the last state the player
+ * reported makes it pointless (play while already playing, for example).
+ * Reported state lags behind the commands that have run, so play, pause and
+ * stop are only judged once the last of them to run has been confirmed by
+ * the state it leads to - until then they always run.
+ */
+class PlayerCommandQueue {
+
+    public enum Type {
+        PLAY,
+        PAUSE,
+        STOP,
+        SKIP,
+        SEEK,
+        SET_ACTIVE_STATION
+    }
+
+    public static final class Command {
+        public final Type type;
+        public float seconds;
+        public Station station;
+        final long enqueuedAt;
+
+        Command(Type type) {
+            this.type = type;
+            this.enqueuedAt = SystemClock.elapsedRealtime();
+        }
+    }
+
+    public interface Target {
+        void execute(Command command);
+
+        /**
+         * A waiting command was dropped or replaced and will not be executed.
+         */
+        void discarded(Command command);
+    }
+
+    private static final class Stats {
+        long executed;
+        long coalesced;
+        long dropped;
+        long totalWaitMs;
+        long maxWaitMs;
+    }
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Target target;
+
+    private final Deque<Command> pending = new ArrayDeque<>();
+    private final Stats[] stats = new Stats[Type.values().length];
+    private boolean drainScheduled = false;
+    // last state the player reported (null when unknown)
+    private State state = null;
+    // the last play, pause or stop that ran, until the player reports the state it leads to
+    private Type unconfirmed = null;
+
+    private final Runnable drain = new Runnable() {
+        @Override
+        public void run() {
+            List<Command> commands;
+
+            synchronized (PlayerCommandQueue.this) {
+                drainScheduled = false;
+                commands = new ArrayList<>(pending);
+                pending.clear();
+            }
+
+            for (Command command : commands) {
+                long waited = SystemClock.elapsedRealtime() - command.enqueuedAt;
+
+                synchronized (PlayerCommandQueue.this) {
+                    Stats s = stats[command.type.ordinal()];
+                    if (isPointless(command)) {
+                        s.dropped++;
+                        target.discarded(command);
+                        continue;
+                    }
+
+                    s.executed++;
+                    s.totalWaitMs += waited;
+                    s.maxWaitMs = Math.max(s.maxWaitMs, waited);
+
+                    if (confirmingState(command.type) != null) {
+                        unconfirmed = command.type;
+                    }
+                }
+
+                target.execute(command);
+            }
+        }
+    };
+
+    public PlayerCommandQueue(Target target) {
+        this.target = target;
+        for (int i = 0; i < stats.length; i++) {
+            stats[i] = new Stats();
+        }
+    }
+
+    public void play() {
+        enqueue(new Command(Type.PLAY));
+    }
+
+    public void pause() {
+        enqueue(new Command(Type.PAUSE));
+    }
+
+    public void stop() {
+        enqueue(new Command(Type.STOP));
+    }
+
+    public void skip() {
+        enqueue(new Command(Type.SKIP));
+    }
+
+    public void seek(float seconds) {
+        Command command = new Command(Type.SEEK);
+        command.seconds = seconds;
+        enqueue(command);
+    }
+
+    public void setActiveStation(Station station) {
+        Command command = new Command(Type.SET_ACTIVE_STATION);
+        command.station = station;
+        enqueue(command);
+    }
+
+    /**
+     * Keep track of the player state, to decide which commands are pointless.
+     */
+    public synchronized void setState(State state) {
+        this.state = state;
+        if (unconfirmed != null && confirmingState(unconfirmed) == state) {
+            unconfirmed = null;
+        }
+    }
+
+    public synchronized WritableMap getStats() {
+        WritableMap map = Arguments.createMap();
+        for (Type type : Type.values()) {
+            Stats s = stats[type.ordinal()];
+            WritableMap entry = Arguments.createMap();
+            entry.putDouble("executed", s.executed);
+            entry.putDouble("coalesced", s.coalesced);
+            entry.putDouble("dropped", s.dropped);
+            entry.putDouble("averageWaitMs", (s.executed > 0) ? (double) s.totalWaitMs / s.executed : 0);
+            entry.putDouble("maxWaitMs", s.maxWaitMs);
+            map.putMap(type.name().toLowerCase(Locale.US), entry);
+        }
+        map.putInt("pending", pending.size());
+        return map;
+    }
+
+    private synchronized void enqueue(Command command) {
+        Command last = pending.peekLast();
+        Stats s = stats[command.type.ordinal()];
+
+        switch (command.type) {
+            case PLAY:
+            case PAUSE:
+                if (last != null && (last.type == Type.PLAY || last.type == Type.PAUSE)) {
+                    pending.pollLast();
+                    stats[last.type.ordinal()].coalesced++;
+                    if (last.type != command.type) {
+                        target.discarded(last);
+                    }
+                }
+                break;
+
+            case SEEK:
+                if (last != null && last.type == Type.SEEK) {
+                    last.seconds += command.seconds;
+                    s.coalesced++;
+                    return;
+                }
+                break;
+
+            case SET_ACTIVE_STATION:
+                if (last != null && last.type == Type.SET_ACTIVE_STATION) {
+                    pending.pollLast();
+                    s.coalesced++;
+                }
+                break;
+
+            case SKIP:
+                if (containsSkip()) {
+                    s.coalesced++;
+                    return;
+                }
+                break;
+
+            default:
+                break;
+        }
+
+        pending.addLast(command);
+
+        if (!drainScheduled) {
+            drainScheduled = true;
+            mainHandler.post(drain);
+        }
+    }
+
+    private boolean containsSkip() {
+        for (Command command : pending) {
+            if (command.type == Type.SKIP) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isPointless(Command command) {
+        State current = state;
+
+        if (unconfirmed != null && confirmingState(command.type) != null) {
+            // the reported state may not include a command that has already run
+            return false;
+        }
+
+        switch (command.type) {
+            case PLAY:
+                return current == State.PLAYING;
+            case PAUSE:
+                return current == State.PAUSED || current == State.READY_TO_PLAY;
+            case STOP:
+                return current == State.READY_TO_PLAY;
+            case SEEK:
+                return command.seconds == 0;
+            default:
+                return false;
+        }
+    }
+
+    // the state the player reports once the command has taken effect, or null
+    // for commands that don't lead to a particular state
+    private static State confirmingState(Type type) {
+        switch (type) {
+            case PLAY:
+                return State.PLAYING;
+            case PAUSE:
+                return State.PAUSED;
+            case STOP:
+                return State.READY_TO_PLAY;
+            default:
+                return null;
+        }
+    }
+
+}
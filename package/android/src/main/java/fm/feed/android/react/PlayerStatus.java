@@ -0,0 +1,100 @@
+package fm.feed.android.react;
+
+import android.os.SystemClock;
+
+import fm.feed.android.playersdk.State;
+import fm.feed.android.playersdk.models.Play;
+
+/**
+ * Immutable copy of the player values javascript can read synchronously.
+ *
+ * The module builds a new instance from its listener callbacks and publishes
+ * it through a volatile field, so a reader on any thread sees one consistent
+ * set of values without locking or waiting on the main thread.
+ */
+final class PlayerStatus {
+
+    public static final PlayerStatus INITIAL = new PlayerStatus(State.UNINITIALIZED, false, false, 0,
+            null, null, 0, 0, 0, 0, 1);
+
+    public final State state;
+    public final boolean canSkip;
+    public final boolean canLike;
+    public final float maxSeekableLengthInSeconds;
+    public final Integer activeStationId;
+    public final Play play;
+    // seconds in the play
+    public final float duration;
+    // elapsed seconds last reported for the play, and when that was reported
+    public final float elapsed;
+    public final long elapsedAt;
+    // counts the progress reports, so readers can tell when a new one arrived
+    public final long progressSequence;
+    public final float volume;
+
+    private PlayerStatus(State state, boolean canSkip, boolean canLike, float maxSeekableLengthInSeconds,
+                         Integer activeStationId, Play play, float duration, float elapsed, long elapsedAt,
+                         long progressSequence, float volume) {
+        this.state = state;
+        this.canSkip = canSkip;
+        this.canLike = canLike;
+        this.maxSeekableLengthInSeconds = maxSeekableLengthInSeconds;
+        this.activeStationId = activeStationId;
+        this.play = play;
+        this.duration = duration;
+        this.elapsed = elapsed;
+        this.elapsedAt = elapsedAt;
+        this.progressSequence = progressSequence;
+        this.volume = volume;
+    }
+
+    public PlayerStatus withState(State state) {
+        // elapsed only advances while playing, so restart the clock on every change
+        return new PlayerStatus(state, canSkip, canLike, maxSeekableLengthInSeconds,
+                activeStationId, play, duration, currentElapsed(), SystemClock.elapsedRealtime(),
+                progressSequence, volume);
+    }
+
+    public PlayerStatus withCanSkip(boolean canSkip) {
+        return new PlayerStatus(state, canSkip, canLike, maxSeekableLengthInSeconds,
+                activeStationId, play, duration, elapsed, elapsedAt, progressSequence, volume);
+    }
+
+    public PlayerStatus withCapabilities(boolean canSkip, boolean canLike, float maxSeekableLengthInSeconds) {
+        return new PlayerStatus(state, canSkip, canLike, maxSeekableLengthInSeconds,
+                activeStationId, play, duration, elapsed, elapsedAt, progressSequence, volume);
+    }
+
+    public PlayerStatus withActiveStationId(int activeStationId) {
+        return new PlayerStatus(state, canSkip, canLike, maxSeekableLengthInSeconds,
+                activeStationId, play, duration, elapsed, elapsedAt, progressSequence, volume);
+    }
+
+    public PlayerStatus withPlay(Play play) {
+        return new PlayerStatus(state, canSkip, canLike, maxSeekableLengthInSeconds,
+                activeStationId, play, play.getAudioFile().getDurationInSeconds(), 0, SystemClock.elapsedRealtime(),
+                progressSequence + 1, volume);
+    }
+
+    public PlayerStatus withElapsed(float elapsed) {
+        return new PlayerStatus(state, canSkip, canLike, maxSeekableLengthInSeconds,
+                activeStationId, play, duration, elapsed, SystemClock.elapsedRealtime(), progressSequence + 1, volume);
+    }
+
+    public PlayerStatus withVolume(float volume) {
+        return new PlayerStatus(state, canSkip, canLike, maxSeekableLengthInSeconds,
+                activeStationId, play, duration, elapsed, elapsedAt, progressSequence, volume);
+    }
+
+    /**
+     * The last reported elapsed time, advanced by the time since it was
+     * reported when the player is playing.
+     */
+    public float currentElapsed() {
+        if (state != State.PLAYING || play == null) {
+            return elapsed;
+        }
+        return elapsed + (SystemClock.elapsedRealtime() - elapsedAt) / 1000f;
+    }
+
+}
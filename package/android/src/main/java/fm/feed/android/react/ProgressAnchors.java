@@ -0,0 +1,109 @@
+package fm.feed.android.react;
+
+import android.os.SystemClock;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+/**
+ * Decides when a 'progress-anchor' event should be sent in place of the
+ * per-tick 'elapse' event. An anchor holds the elapsed playback time, the
+ * monotonic native time it was sampled at and the rate playback is advancing
+ * at, so javascript can extrapolate elapsed time on its own until the next anchor.
+ *
+ * Anchors are produced when a play starts, when the playback state changes,
+ * after a seek, when the reported time drifts away from the extrapolated time,
+ * and otherwise every resync interval.
+ */
+class ProgressAnchors {
+
+    public static final long DEFAULT_RESYNC_INTERVAL_MS = 5000;
+
+    // allowed difference between reported and extrapolated elapsed time
+    private static final double MAX_DRIFT_SECONDS = 0.5;
+
+    private volatile boolean enabled = false;
+    private long resyncIntervalMs = DEFAULT_RESYNC_INTERVAL_MS;
+
+    private boolean playing = false;
+    private boolean dirty = true;
+    private double anchorElapsed = 0;
+    private long anchorTimestamp = -1;
+    private double anchorRate = 0;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public synchronized void configure(boolean enabled, long resyncIntervalMs) {
+        this.enabled = enabled;
+        this.resyncIntervalMs = (resyncIntervalMs > 0) ? resyncIntervalMs : DEFAULT_RESYNC_INTERVAL_MS;
+        this.dirty = true;
+    }
+
+    /**
+     * Force the next progress update to produce an anchor (after a seek, for example).
+     */
+    public synchronized void invalidate() {
+        dirty = true;
+    }
+
+    /**
+     * A new play has started, so elapsed time restarts at zero.
+     */
+    public synchronized WritableMap playStarted() {
+        return anchor(0);
+    }
+
+    /**
+     * The playback state changed; returns an anchor at the last known elapsed time
+     * with the new rate, or null when anchors are disabled.
+     */
+    public synchronized WritableMap stateChanged(boolean playing) {
+        double elapsed = extrapolate(SystemClock.elapsedRealtime());
+        this.playing = playing;
+
+        if (!enabled) {
+            dirty = true;
+            return null;
+        }
+
+        return anchor(elapsed);
+    }
+
+    /**
+     * Returns an anchor if the given progress update warrants one, or null.
+     */
+    public synchronized WritableMap progressUpdated(double elapsed) {
+        long now = SystemClock.elapsedRealtime();
+
+        if (!dirty && (anchorTimestamp >= 0)
+                && (now - anchorTimestamp < resyncIntervalMs)
+                && (Math.abs(extrapolate(now) - elapsed) <= MAX_DRIFT_SECONDS)) {
+            return null;
+        }
+
+        return anchor(elapsed);
+    }
+
+    private double extrapolate(long now) {
+        if (anchorTimestamp < 0) {
+            return anchorElapsed;
+        }
+        return anchorElapsed + anchorRate * (now - anchorTimestamp) / 1000.0;
+    }
+
+    private WritableMap anchor(double elapsed) {
+        anchorElapsed = elapsed;
+        anchorTimestamp = SystemClock.elapsedRealtime();
+        anchorRate = playing ? 1.0 : 0.0;
+        dirty = false;
+
+        WritableMap params = Arguments.createMap();
+        params.putDouble("elapsed", anchorElapsed);
+        params.putDouble("timestamp", anchorTimestamp);
+        params.putDouble("rate", anchorRate);
+        return params;
+    }
+
+}
@@ -0,0 +1,305 @@
+package fm.feed.android.react;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Tracks playback quality of experience for the current session and for
+ * each station (or stream) played in it:
+ *
+ * - startup latency: time from a play request until audio is playing
+ * - skip-to-audio latency: time from a skip request until the next song is playing
+ * - stall count, total and longest stall duration, once playback has started
+ * - rebuffer ratio: stalled time / (playing time + stalled time)
+ *
+ * The owning module reports requests and state transitions; javascript can
+ * read a snapshot at any time, and can ask for a periodic summary, which is
+ * handed to the module's Listener to send.
+ */
+class QoeTracker {
+
+    public interface Listener {
+        // called on the main thread
+        void summary(WritableMap params);
+    }
+
+    private enum Phase {
+        IDLE,
+        PLAYING,
+        STALLED
+    }
+
+    private static final class Stats {
+        final LatencyHistogram startup = new LatencyHistogram();
+        final LatencyHistogram skipToAudio = new LatencyHistogram();
+        long stallCount;
+        long stallMs;
+        long longestStallMs;
+        long playMs;
+
+        WritableMap toMap() {
+            WritableMap map = Arguments.createMap();
+            map.putMap("startupLatency", startup.toMap());
+            map.putMap("skipToAudioLatency", skipToAudio.toMap());
+            map.putDouble("stallCount", stallCount);
+            map.putDouble("stallMs", stallMs);
+            map.putDouble("longestStallMs", longestStallMs);
+            map.putDouble("playMs", playMs);
+            map.putDouble("rebufferRatio", (playMs + stallMs > 0) ? (double) stallMs / (playMs + stallMs) : 0);
+            map.putDouble("stallsPerHour", (playMs > 0) ? stallCount * 3600000.0 / playMs : 0);
+            return map;
+        }
+    }
+
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private Stats session = new Stats();
+    private Map<String, Stats> stations = new HashMap<>();
+    private String currentKey;
+
+    private Phase phase = Phase.IDLE;
+    private long phaseStartedAt;
+    private long startRequestedAt;
+    private long skipRequestedAt;
+    private long stallStartedAt;
+
+    private long summaryIntervalMs = 0;
+
+    private final Runnable summary = new Runnable() {
+        @Override
+        public void run() {
+            long interval;
+            WritableMap params;
+
+            synchronized (QoeTracker.this) {
+                interval = summaryIntervalMs;
+                if (interval <= 0) {
+                    return;
+                }
+                params = snapshot(false);
+            }
+
+            listener.summary(params);
+            mainHandler.postDelayed(this, interval);
+        }
+    };
+
+    public QoeTracker(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Start a new session, discarding everything measured so far.
+     */
+    public synchronized void reset() {
+        session = new Stats();
+        stations = new HashMap<>();
+        currentKey = null;
+        phase = Phase.IDLE;
+        phaseStartedAt = SystemClock.elapsedRealtime();
+        startRequestedAt = 0;
+        skipRequestedAt = 0;
+    }
+
+    public synchronized void playRequested() {
+        if (phase != Phase.PLAYING && startRequestedAt == 0) {
+            startRequestedAt = SystemClock.elapsedRealtime();
+        }
+    }
+
+    public synchronized void skipRequested() {
+        if (skipRequestedAt == 0) {
+            skipRequestedAt = SystemClock.elapsedRealtime();
+        }
+    }
+
+    /**
+     * The skip failed, so there is no skip-to-audio latency to measure.
+     */
+    public synchronized void skipFailed() {
+        skipRequestedAt = 0;
+    }
+
+    /**
+     * Playback was paused or stopped on request, so any pending startup
+     * or skip will not be measured.
+     */
+    public synchronized void stopRequested() {
+        startRequestedAt = 0;
+        skipRequestedAt = 0;
+    }
+
+    /**
+     * Subsequent measurements belong to the given station.
+     */
+    public synchronized void stationChanged(String key) {
+        closePhase(SystemClock.elapsedRealtime());
+        currentKey = key;
+    }
+
+    public synchronized void playing() {
+        long now = SystemClock.elapsedRealtime();
+        closePhase(now);
+        endStall(now);
+
+        if (startRequestedAt != 0) {
+            session.startup.record(now - startRequestedAt);
+            Stats station = station();
+            if (station != null) {
+                station.startup.record(now - startRequestedAt);
+            }
+            startRequestedAt = 0;
+        }
+
+        if (skipRequestedAt != 0) {
+            recordSkipToAudio(now);
+        }
+
+        phase = Phase.PLAYING;
+    }
+
+    /**
+     * A new play began. The player usually stays playing across a skip, so
+     * this is where a pending skip is resolved; when it isn't playing, the
+     * skip is resolved once it is.
+     */
+    public synchronized void playStarted() {
+        if (skipRequestedAt != 0 && phase == Phase.PLAYING) {
+            recordSkipToAudio(SystemClock.elapsedRealtime());
+        }
+    }
+
+    /**
+     * Playback is waiting for audio. This only counts as a stall when audio
+     * was playing and no start is pending.
+     */
+    public synchronized void stalled() {
+        if (phase != Phase.PLAYING || startRequestedAt != 0) {
+            return;
+        }
+
+        closePhase(SystemClock.elapsedRealtime());
+
+        session.stallCount++;
+        Stats station = station();
+        if (station != null) {
+            station.stallCount++;
+        }
+
+        phase = Phase.STALLED;
+        stallStartedAt = SystemClock.elapsedRealtime();
+    }
+
+    public synchronized void stopped() {
+        long now = SystemClock.elapsedRealtime();
+        closePhase(now);
+        endStall(now);
+        phase = Phase.IDLE;
+    }
+
+    /**
+     * Send a summary event every intervalMs milliseconds; 0 stops the events.
+     */
+    public void setSummaryInterval(long intervalMs) {
+        synchronized (this) {
+            summaryIntervalMs = Math.max(intervalMs, 0);
+        }
+
+        mainHandler.removeCallbacks(summary);
+        if (intervalMs > 0) {
+            mainHandler.postDelayed(summary, intervalMs);
+        }
+    }
+
+    /**
+     * Return { session: { ... }, currentStation: 'id', stations: { 'id': { ... }, ... } },
+     * with per-station figures only when includeStations is true.
+     */
+    public synchronized WritableMap snapshot(boolean includeStations) {
+        closePhase(SystemClock.elapsedRealtime());
+
+        WritableMap map = Arguments.createMap();
+        map.putMap("session", session.toMap());
+        if (currentKey != null) {
+            map.putString("currentStation", currentKey);
+        }
+
+        if (includeStations) {
+            WritableMap stationMap = Arguments.createMap();
+            for (Map.Entry<String, Stats> entry : stations.entrySet()) {
+                stationMap.putMap(entry.getKey(), entry.getValue().toMap());
+            }
+            map.putMap("stations", stationMap);
+        }
+
+        return map;
+    }
+
+    private Stats station() {
+        if (currentKey == null) {
+            return null;
+        }
+
+        Stats stats = stations.get(currentKey);
+        if (stats == null) {
+            stats = new Stats();
+            stations.put(currentKey, stats);
+        }
+        return stats;
+    }
+
+    private void recordSkipToAudio(long now) {
+        session.skipToAudio.record(now - skipRequestedAt);
+        Stats station = station();
+        if (station != null) {
+            station.skipToAudio.record(now - skipRequestedAt);
+        }
+        skipRequestedAt = 0;
+    }
+
+    private void endStall(long now) {
+        if (phase != Phase.STALLED) {
+            return;
+        }
+
+        long duration = now - stallStartedAt;
+        session.longestStallMs = Math.max(session.longestStallMs, duration);
+        Stats station = station();
+        if (station != null) {
+            station.longestStallMs = Math.max(station.longestStallMs, duration);
+        }
+    }
+
+    // attribute the time since the phase began, and restart the phase clock
+    private void closePhase(long now) {
+        long duration = now - phaseStartedAt;
+        phaseStartedAt = now;
+
+        if (duration <= 0 || phase == Phase.IDLE) {
+            return;
+        }
+
+        Stats station = station();
+
+        if (phase == Phase.PLAYING) {
+            session.playMs += duration;
+            if (station != null) {
+                station.playMs += duration;
+            }
+        } else {
+            session.stallMs += duration;
+            if (station != null) {
+                station.stallMs += duration;
+            }
+        }
+    }
+
+}
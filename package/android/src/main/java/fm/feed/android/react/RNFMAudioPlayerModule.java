@@ -1,6 +1,8 @@
 
 package fm.feed.android.react;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import com.facebook.react.bridge.Arguments;
@@ -8,20 +10,20 @@ import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
-import com.facebook.react.bridge.UiThreadUtil;
 import com.facebook.react.bridge.WritableArray;
-import com.facebook.react.bridge.WritableNativeArray;
 import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 
 import org.jetbrains.annotations.NotNull;
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 import fm.feed.android.playersdk.AvailabilityListener;
@@ -40,9 +42,9 @@ import fm.feed.android.playersdk.models.Play;
 import fm.feed.android.playersdk.models.Station;
 
 import static fm.feed.android.react.Utils.convertJsonToArray;
-import static fm.feed.android.react.Utils.convertJsonToMap;
+import static fm.feed.android.react.Utils.convertModelToMap;
+import static fm.feed.android.react.Utils.moduleEvent;
 import static fm.feed.android.react.Utils.sendEvent;
-import static fm.feed.android.react.Utils.toJson;
 
 import androidx.annotation.NonNull;
 
@@ -51,12 +53,126 @@ public class RNFMAudioPlayerModule extends ReactContextBaseJavaModule
 
   public final static String TAG = RNFMAudioPlayerModule.class.getName();
 
+  private final static String SPOOL_FILE_NAME = "rnfm-event-spool";
+  private final static int DEFAULT_SPOOL_CAPACITY = 256 * 1024;
+  // how long crossfadeFromSimulcast() waits for the player to start playing
+  private final static int CROSSFADE_START_TIMEOUT_MS = 15 * 1000;
+
   private final ReactApplicationContext reactContext;
-  private FeedAudioPlayer mFeedAudioPlayer;
+  private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+  private final EventSerializer mSerializer = new EventSerializer("RNFMAudioPlayerEvents");
+
+  // Owned by the main thread: only changed by code running there (see
+  // onMainThread), and volatile so other threads can read them without locking.
+  private volatile FeedAudioPlayer mFeedAudioPlayer;
+  private volatile String mToken;
+  private volatile boolean mAvailable = false;
+  private volatile PlayerStatus mStatus = PlayerStatus.INITIAL;
+  // reads the player on the main thread, as maxSeekableLengthInSeconds() needs
+  private final Runnable mRefreshStatus = new Runnable() {
+    @Override
+    public void run() {
+      FeedAudioPlayer player = mFeedAudioPlayer;
+      if (player == null) {
+        return;
+      }
+
+      boolean canSkip = player.canSkip();
+      boolean canLike = player.canLike();
+      float maxSeekable = player.maxSeekableLengthInSeconds();
+
+      mStatus = mStatus.withCapabilities(canSkip, canLike, maxSeekable);
+    }
+  };
+  // crossfade waiting for the player to start playing
+  private volatile PendingCrossfade mPendingCrossfade;
+  private final ProgressAnchors mProgressAnchors = new ProgressAnchors();
+  private volatile boolean mProgressEvents = true;
+  // a seek has been handed to the player and no progress has been reported since
+  // (main thread only)
+  private boolean mSeekExecuted = false;
+  private final StationIndex mStationIndex = new StationIndex();
+  // while javascript only has the stations from the session cache, mStationIndex is
+  // empty, so a station picked from that list waits here for the player's list
+  private final Object mProvisionalLock = new Object();
+  private boolean mStationsProvisional = false;
+  private Integer mPendingActiveStation = null;
+  private final MetadataCache mMetadataCache = new MetadataCache();
+  private final VolumeChannel mVolumeChannel = new VolumeChannel(new VolumeChannel.Target() {
+    @Override
+    public void apply(float volume) {
+      FeedAudioPlayer player = mFeedAudioPlayer;
+      if (player != null) {
+        player.setVolume(volume);
+      }
+
+      mStatus = mStatus.withVolume(volume);
+    }
+  });
+  private final StationWarmer mStationWarmer = new StationWarmer(new StationWarmer.Target() {
+    @Override
+    public boolean prepare(Station station, MusicQueuedListener listener) {
+      FeedAudioPlayer player = mFeedAudioPlayer;
+      if (player == null || !mAvailable) {
+        return false;
+      }
+
+      player.prepareToPlay(station, listener);
+      return true;
+    }
+  });
+  private final PlayerCommandQueue mCommandQueue = new PlayerCommandQueue(new PlayerCommandQueue.Target() {
+    @Override
+    public void execute(PlayerCommandQueue.Command command) {
+      executeCommand(command);
+    }
+
+    @Override
+    public void discarded(PlayerCommandQueue.Command command) {
+      mCommandMetrics.cancelled(command.type);
+    }
+  });
+  private final CommandMetrics mCommandMetrics = new CommandMetrics();
+  private final QoeTracker mQoeTracker;
+  private final SessionCache mSessionCache;
+  private final LogEventPipeline mLogEventPipeline = new LogEventPipeline(new LogEventPipeline.Sink() {
+    @Override
+    public boolean isAvailable() {
+      return mAvailable && (mFeedAudioPlayer != null);
+    }
+
+    @Override
+    public boolean logEvent(String event, JSONObject params) {
+      FeedAudioPlayer player = mFeedAudioPlayer;
+      if (player == null) {
+        return false;
+      }
+
+      Log.i(TAG, "Log event: " + event);
+      player.logEvent(event, params);
+      return true;
+    }
+  });
+  private final StationSnapshot mStationSnapshot = new StationSnapshot(new StationSnapshot.StationConverter() {
+    @Override
+    public WritableMap convert(Station station) throws Exception {
+      return convertStation(station);
+    }
+  });
 
   public RNFMAudioPlayerModule(ReactApplicationContext reactContext) {
     super(reactContext);
     this.reactContext = reactContext;
+    this.mQoeTracker = new QoeTracker(new QoeTracker.Listener() {
+      @Override
+      public void summary(WritableMap params) {
+        emit("qoe-summary", params);
+      }
+    });
+    this.mSessionCache = new SessionCache(reactContext);
+
+    mLogEventPipeline.setSpool(new EventSpool(new File(reactContext.getFilesDir(), SPOOL_FILE_NAME),
+        DEFAULT_SPOOL_CAPACITY), LogEventPipeline.DEFAULT_REPLAY_EVENTS_PER_SECOND);
   }
 
   @Override
@@ -66,250 +182,551 @@ public class RNFMAudioPlayerModule extends ReactContextBaseJavaModule
 
   @ReactMethod
   public void updateSession() {
-    mFeedAudioPlayer.updateSession(new SessionUpdateListener() {
-      @Override
-      public void onSessionUpdateFailed() {
-        Log.e(TAG, "Error while updating session");
-      }
-
+    onMainThread(new Runnable() {
       @Override
-      public void onUpdatedSessionAvailable() {
-        WritableMap params = Arguments.createMap();
-
-        params.putString("clientID", mFeedAudioPlayer.getClientId());
-
-        WritableArray wArray = new WritableNativeArray();
-        for (Station station : mFeedAudioPlayer.getStationList()) {
-          try {
-            JSONObject jsonStation = new JSONObject(toJson(station));
-            jsonStation.put("hasNewMusic", station.hasNewMusic());
-
-            wArray.pushMap(convertJsonToMap(jsonStation));
-          } catch (Exception e) {
-            // ignore
-          }
+      public void run() {
+        if (mFeedAudioPlayer == null) {
+          Log.e(TAG, "Ignoring updateSession because the player has not been initialized");
+          return;
         }
 
-        params.putArray("stations", wArray);
-        params.putInt("activeStationId", mFeedAudioPlayer.getActiveStation().getId());
-
-        Log.i(TAG, "generating a new session");
+        mFeedAudioPlayer.updateSession(new SessionUpdateListener() {
+          @Override
+          public void onSessionUpdateFailed() {
+            Log.e(TAG, "Error while updating session");
+          }
 
-        sendEvent(reactContext, "session-updated", params);
+          @Override
+          public void onUpdatedSessionAvailable() {
+            onMainThread("onUpdatedSessionAvailable", new Runnable() {
+              @Override
+              public void run() {
+                sessionUpdated();
+              }
+            });
+          }
+        });
       }
     });
   }
 
+  /**
+   * Switch between the direct model serializer and the original
+   * Gson -> JSONObject -> WritableMap conversion, for comparing the two.
+   */
   @ReactMethod
-  public void setClientID(String clientID) {
-    Log.i(TAG, "assigning old client ID: " + clientID);
-    mFeedAudioPlayer.setClientId(clientID);
+  public void setLegacySerialization(boolean legacy) {
+    Utils.setLegacySerialization(legacy);
+  }
 
-    updateSession();
+  /**
+   * When enabled, 'elapse' events are replaced by 'progress-anchor' events that
+   * are only sent on play start, state change, seek, and every resyncIntervalMs.
+   */
+  @ReactMethod
+  public void setProgressAnchors(boolean enabled, int resyncIntervalMs) {
+    mProgressAnchors.configure(enabled, resyncIntervalMs);
   }
 
+  /**
+   * Choose how events are delivered to javascript: "immediate" (the default),
+   * "frame" to batch events until the next display frame, or "window" to batch
+   * events for windowMs milliseconds. Batches arrive as a single 'event-batch'
+   * event. This applies to the simulcast streamer's events too.
+   */
   @ReactMethod
-  public void logEvent(String event, ReadableMap params) {
+  public void setEventBatching(String policy, int windowMs) {
     try {
-      JSONObject object = Utils.convertMapToJson(params);
-      Log.i(TAG, "Log event: " + event);
-      mFeedAudioPlayer.logEvent(event, object);
-    } catch (Exception e) {
-      e.printStackTrace();
+      Utils.setEventBatching(EventBatcher.FlushPolicy.valueOf(policy.toUpperCase(Locale.US)), windowMs);
+    } catch (IllegalArgumentException e) {
+      Log.e(TAG, "Unknown event batching policy: " + policy);
     }
   }
 
+  /**
+   * Choose whether progress is sent as 'elapse' (or 'progress-anchor') events.
+   * Code that polls readProgress() can turn the events off, which stops
+   * anchors for state changes and new plays as well.
+   */
   @ReactMethod
-  public void createNewClientID() {
-    Log.i(TAG, "creating new client ID");
-    mFeedAudioPlayer.createNewClientId(new ClientIdListener() {
-      @Override
-      public void onClientId(String newClientID) {
-        updateSession();
-      }
-
-      @Override
-      public void onError() {
-        Log.e(TAG, "Error while generating a new client id");
-      }
-    });
+  public void setProgressEvents(boolean enabled) {
+    if (enabled && !mProgressEvents) {
+      // javascript missed the anchors sent meanwhile, so start with a fresh one
+      mProgressAnchors.invalidate();
+    }
+    mProgressEvents = enabled;
   }
 
-  @ReactMethod
-  public void initializeWithToken(String token, String secret, boolean enableBackgroundMusic) {
+  /**
+   * Return { elapsed, duration, playing, sequence } for the current play, from
+   * the published status snapshot, so without waiting for any thread. Cheap
+   * enough to call every frame.
+   */
+  @ReactMethod(isBlockingSynchronousMethod = true)
+  public WritableMap readProgress() {
+    PlayerStatus status = mStatus;
+
+    double elapsed = status.currentElapsed();
+    if (status.duration > 0) {
+      elapsed = Math.min(elapsed, status.duration);
+    }
 
+    WritableMap map = Arguments.createMap();
+    map.putDouble("elapsed", elapsed);
+    map.putDouble("duration", status.duration);
+    map.putBoolean("playing", status.state == State.PLAYING);
+    map.putDouble("sequence", status.progressSequence);
+    return map;
+  }
 
-    FeedAudioPlayer.setDisableAudioFocus(false);
-    AvailabilityListener listener = new AvailabilityListener() {
+  @ReactMethod
+  public void setClientID(final String clientID) {
+    Log.i(TAG, "assigning old client ID: " + clientID);
+    onMainThread(new Runnable() {
       @Override
-      public void onPlayerAvailable(@NotNull FeedAudioPlayer feedAudioPlayer) {
-        mFeedAudioPlayer = feedAudioPlayer;
-
-        WritableMap params = Arguments.createMap();
-        params.putBoolean("available", true);
-
-        WritableArray wArray = new WritableNativeArray();
-
-        for (Station station : feedAudioPlayer.getStationList()) {
-          try {
-            JSONObject jsonStation = new JSONObject(toJson(station));
-            jsonStation.put("hasNewMusic", station.hasNewMusic());
-
-            wArray.pushMap(convertJsonToMap(jsonStation));
-          } catch (Exception e) {
-            e.printStackTrace();
-          }
+      public void run() {
+        if (mFeedAudioPlayer == null) {
+          Log.e(TAG, "Ignoring setClientID because the player has not been initialized");
+          return;
         }
 
-        params.putArray("stations", wArray);
-        params.putInt("activeStationId", feedAudioPlayer.getActiveStation().getId());
-        params.putString("clientID", feedAudioPlayer.getClientId());
-        sendEvent(reactContext, "availability", params);
-      }
-
-      @Override
-      public void onPlayerUnavailable(Exception e) {
-        WritableMap params = Arguments.createMap();
-        params.putBoolean("available", false);
-        sendEvent(reactContext, "availability", params);
+        mFeedAudioPlayer.setClientId(clientID);
       }
-    };
+    });
 
-    if (enableBackgroundMusic) {
-      FeedPlayerService.initialize(reactContext, token, secret);
-      mFeedAudioPlayer = FeedPlayerService.getInstance();
-      FeedPlayerService.getInstance(listener);
+    updateSession();
+  }
 
+  @ReactMethod
+  public void logEvent(String event, ReadableMap params) {
+    mLogEventPipeline.enqueue(event, params);
+  }
 
-    } else {
-      mFeedAudioPlayer = new FeedAudioPlayer.Builder(reactContext, token, secret).setAvailabilityListener(listener)
-          .build();
+  /**
+   * Configure the logEvent queue: policy is one of "drop_oldest" (the default),
+   * "drop_newest" or "block", applied when more than capacity events are waiting.
+   */
+  @ReactMethod
+  public void setLogEventPolicy(String policy, int capacity) {
+    try {
+      mLogEventPipeline.configure(LogEventPipeline.OverflowPolicy.valueOf(policy.toUpperCase(Locale.US)), capacity);
+    } catch (IllegalArgumentException e) {
+      Log.e(TAG, "Unknown log event policy: " + policy);
     }
-    mFeedAudioPlayer.addPlayListener(RNFMAudioPlayerModule.this);
-    mFeedAudioPlayer.addSkipListener(RNFMAudioPlayerModule.this);
-    mFeedAudioPlayer.addStationChangedListener(RNFMAudioPlayerModule.this);
-    mFeedAudioPlayer.addStateListener(RNFMAudioPlayerModule.this);
   }
 
+  /**
+   * Configure the on-disk spool that holds logged events while the player
+   * is unavailable. Spooled events are replayed at replayEventsPerSecond once
+   * the player is available again. Events already spooled are kept when the
+   * capacity changes, and are still replayed after the spool is disabled.
+   */
   @ReactMethod
-  public void play() {
+  public void setLogEventSpool(boolean enabled, int capacityBytes, int replayEventsPerSecond) {
+    EventSpool spool = enabled
+        ? new EventSpool(new File(reactContext.getFilesDir(), SPOOL_FILE_NAME),
+            (capacityBytes > 0) ? capacityBytes : DEFAULT_SPOOL_CAPACITY)
+        : null;
+    mLogEventPipeline.setSpool(spool, replayEventsPerSecond);
+  }
+
+  @ReactMethod
+  public void getLogEventStats(Promise promise) {
+    promise.resolve(mLogEventPipeline.getStats());
+  }
 
-    UiThreadUtil.runOnUiThread(new Runnable() {
+  @ReactMethod
+  public void createNewClientID() {
+    Log.i(TAG, "creating new client ID");
+    onMainThread(new Runnable() {
       @Override
       public void run() {
+        if (mFeedAudioPlayer == null) {
+          Log.e(TAG, "Ignoring createNewClientID because the player has not been initialized");
+          return;
+        }
 
-        mFeedAudioPlayer.play();
+        mFeedAudioPlayer.createNewClientId(new ClientIdListener() {
+          @Override
+          public void onClientId(String newClientID) {
+            updateSession();
+          }
+
+          @Override
+          public void onError() {
+            Log.e(TAG, "Error while generating a new client id");
+          }
+        });
       }
     });
   }
 
   @ReactMethod
-  public void pause() {
-    UiThreadUtil.runOnUiThread(new Runnable() {
+  public void initializeWithToken(final String token, final String secret, final boolean enableBackgroundMusic) {
+    onMainThread(new Runnable() {
       @Override
       public void run() {
-
-        mFeedAudioPlayer.pause();
+        initialize(token, secret, enableBackgroundMusic);
       }
     });
   }
 
+  @ReactMethod
+  public void play() {
+    mCommandMetrics.arrived(PlayerCommandQueue.Type.PLAY);
+    mQoeTracker.playRequested();
+    mCommandQueue.play();
+  }
+
+  @ReactMethod
+  public void pause() {
+    mCommandMetrics.arrived(PlayerCommandQueue.Type.PAUSE);
+    mQoeTracker.stopRequested();
+    mCommandQueue.pause();
+  }
+
   @ReactMethod
   public void setActiveStation(Integer station) {
+    Station st = mStationIndex.get(station);
+    if (st == null) {
+      synchronized (mProvisionalLock) {
+        if (mStationsProvisional) {
+          Log.i(TAG, "Setting active station to " + station + " once the player's stations arrive");
+          mPendingActiveStation = station;
+          return;
+        }
+      }
 
-    // Log.i(TAG, "Station id ="+station.toString());
-    boolean flag = false;
-    for (Station st : mFeedAudioPlayer.getStationList()) {
+      // the player's stations may have been indexed meanwhile
+      st = mStationIndex.get(station);
+    }
 
-      if (st.getId().toString().equals(station.toString())) {
-        UiThreadUtil.runOnUiThread(new Runnable() {
-          @Override
-          public void run() {
-            mFeedAudioPlayer.setActiveStation(st, false);
-            mFeedAudioPlayer.prepareToPlay(st, new MusicQueuedListener() {
-              @Override
-              public void onError(@NonNull FeedFMError feedFMError) {
-                Log.e(TAG, "Error: failed to prepareToPlay"+ feedFMError.getMessage());
-              }
+    if (st == null) {
+      Log.e(TAG, "Cannot set active station to " + station + " because no station found with that id");
+      return;
+    }
 
-              @Override
-              public void onMusicQueued() {
-                WritableMap params = Arguments.createMap();
-                sendEvent(reactContext, "musicQueued", params);
-              }
+    mCommandMetrics.arrived(PlayerCommandQueue.Type.SET_ACTIVE_STATION);
+    mStationWarmer.used(station);
+    mCommandQueue.setActiveStation(st);
+  }
 
-            });
-          }
-        });
+  /**
+   * Choose whether the last session is saved and replayed as a provisional
+   * 'availability' event on the next start, and how long a saved session
+   * stays usable.
+   */
+  @ReactMethod
+  public void setSessionCache(boolean enabled, int maxAgeMs) {
+    mSessionCache.configure(enabled, maxAgeMs);
+  }
 
-        flag = true;
-        break;
+  /**
+   * Prepare music for the given stations (most likely first) ahead of time, so
+   * that switching to one of them starts quickly. See StationWarmer.
+   */
+  @ReactMethod
+  public void warmStations(ReadableArray stationIds) {
+    Integer active = mStatus.activeStationId;
+
+    List<Station> stations = new ArrayList<>();
+    for (int i = 0; i < stationIds.size(); i++) {
+      Station station = mStationIndex.get(stationIds.getInt(i));
+      if (station == null) {
+        Log.w(TAG, "Cannot warm station " + stationIds.getInt(i) + " because no station found with that id");
+        continue;
       }
+      if (active != null && active == station.getId()) {
+        continue;
+      }
+      stations.add(station);
     }
-    if (!flag) {
-      Log.e(TAG, "Cannot set active station to " + station + " because no station found with that id");
-    }
+
+    mStationWarmer.warm(stations);
+  }
+
+  /**
+   * Keep at most maxStations warm, and prepare a warm station again once it
+   * has been warm for refreshIntervalMs.
+   */
+  @ReactMethod
+  public void setWarmStationPolicy(int maxStations, int refreshIntervalMs) {
+    mStationWarmer.configure(maxStations, refreshIntervalMs);
+  }
+
+  @ReactMethod
+  public void getWarmStationStats(Promise promise) {
+    promise.resolve(mStationWarmer.getStats());
+  }
+
+  /**
+   * Resolve with the ids of the stations whose option values match every
+   * key/value pair in the given filter.
+   */
+  @ReactMethod
+  public void getStationsMatching(ReadableMap filter, Promise promise) {
+    promise.resolve(mStationIndex.findIds(filter));
   }
 
   @ReactMethod
   public void skip() {
-    UiThreadUtil.runOnUiThread(new Runnable() {
-      @Override
-      public void run() {
-        mFeedAudioPlayer.skip();
-      }
-    });
+    mCommandMetrics.arrived(PlayerCommandQueue.Type.SKIP);
+    mQoeTracker.skipRequested();
+    mCommandQueue.skip();
   }
 
   @ReactMethod
   public void canLike(Promise promise) {
-
-    int myInt = mFeedAudioPlayer.canLike() ? 1 : 0;
+    int myInt = mStatus.canLike ? 1 : 0;
     promise.resolve(myInt);
   }
 
   @ReactMethod
   public void canSkip(Promise promise) {
-    int myInt = mFeedAudioPlayer.canSkip() ? 1 : 0;
+    int myInt = mStatus.canSkip ? 1 : 0;
     promise.resolve(myInt);
   }
 
+  /**
+   * The synchronous getters below return the values last reported by the
+   * player's listeners, without waiting on the main thread.
+   */
+  @ReactMethod(isBlockingSynchronousMethod = true)
+  public boolean canLikeSync() {
+    return mStatus.canLike;
+  }
+
+  @ReactMethod(isBlockingSynchronousMethod = true)
+  public boolean canSkipSync() {
+    return mStatus.canSkip;
+  }
+
+  @ReactMethod(isBlockingSynchronousMethod = true)
+  public double maxSeekableLengthInSecondsSync() {
+    return mStatus.maxSeekableLengthInSeconds;
+  }
+
+  @ReactMethod(isBlockingSynchronousMethod = true)
+  public int playbackStateSync() {
+    return mStatus.state.ordinal();
+  }
+
   @ReactMethod
   public void stop() {
-    UiThreadUtil.runOnUiThread(new Runnable() {
-      @Override
-      public void run() {
-        mFeedAudioPlayer.stop();
-      }
-    });
-
+    mCommandMetrics.arrived(PlayerCommandQueue.Type.STOP);
+    mQoeTracker.stopRequested();
+    mCommandQueue.stop();
   }
 
+  /**
+   * Volume changes are applied on the main thread at most once per frame,
+   * keeping only the latest value.
+   */
   @ReactMethod
   public void setVolume(float volume) {
-    mFeedAudioPlayer.setVolume(volume);
+    mVolumeChannel.set(volume);
   }
 
+  /**
+   * Resolve with { requested, applied, coalesced, fades, fadesCancelled }
+   * counts of volume changes.
+   */
   @ReactMethod
-  public void maxSeekableLengthInSeconds(Promise promise) {
-    UiThreadUtil.runOnUiThread(new Runnable() {
+  public void getVolumeStats(Promise promise) {
+    promise.resolve(mVolumeChannel.getStats());
+  }
+
+  /**
+   * Ramp the volume to target over durationMs natively, and resolve with
+   * { volume, completed } once the ramp finishes or is cancelled by another
+   * volume change. Curve is 'linear', 'ease-in', 'ease-out' or 'equal-power'.
+   */
+  @ReactMethod
+  public void fadeTo(float target, int durationMs, String curve, final Promise promise) {
+    mVolumeChannel.fadeTo(target, durationMs, VolumeChannel.Curve.fromName(curve), new VolumeChannel.FadeListener() {
       @Override
-      public void run() {
-        promise.resolve(mFeedAudioPlayer.maxSeekableLengthInSeconds());
+      public void finished(boolean completed, float volume) {
+        promise.resolve(fadeResult(completed, volume));
       }
     });
   }
 
+  /**
+   * Start playback and fade it in over durationMs while the simulcast stream
+   * fades out, then optionally disconnect the stream. If the player isn't
+   * playing yet, the fades begin once it is. Resolves with { volume, completed },
+   * or rejects if the player doesn't start playing in time or another crossfade
+   * replaces this one before it starts.
+   */
   @ReactMethod
-  public void seekCurrentStationBy(float seconds) {
-    UiThreadUtil.runOnUiThread(new Runnable() {
+  public void crossfadeFromSimulcast(final int durationMs, final String curve, final boolean disconnectSimulcast,
+                                     final Promise promise) {
+    final RNFMSimulcastStreamer simulcast = reactContext.getNativeModule(RNFMSimulcastStreamer.class);
+
+    onMainThread(new Runnable() {
       @Override
       public void run() {
-         mFeedAudioPlayer.seekCurrentStationBy(seconds);
+        PendingCrossfade previous = mPendingCrossfade;
+        mPendingCrossfade = null;
+
+        float destination;
+        if (previous != null) {
+          // the player is already silenced, so fade to the volume from before that
+          destination = previous.destination;
+          previous.replaced();
+        } else {
+          destination = mVolumeChannel.getVolume();
+          // silence the player until the fade starts
+          mVolumeChannel.fadeTo(0, 0, 0, null, null);
+        }
+
+        PendingCrossfade crossfade = new PendingCrossfade(simulcast, destination, durationMs,
+            VolumeChannel.Curve.fromName(curve), disconnectSimulcast, promise);
+        mPendingCrossfade = crossfade;
+        mMainHandler.postDelayed(crossfade.timeout, CROSSFADE_START_TIMEOUT_MS);
+
+        if (mStatus.state == State.PLAYING) {
+          startPendingCrossfade();
+        } else {
+          play();
+        }
       }
     });
   }
 
+  /**
+   * Resolve with everything needed to rebuild the player UI, read at a
+   * single moment:
+   *
+   * { state, activeStationId, play: { id, title, artist, album, duration,
+   *   metadata, canSkip, station_id }, elapsed, canSkip, canLike,
+   *   maxSeekableLengthInSeconds, volume }
+   *
+   * activeStationId and play are missing until they are known.
+   */
+  @ReactMethod
+  public void getPlayerSnapshot(Promise promise) {
+    PlayerStatus status = mStatus;
+
+    try {
+      WritableMap snapshot = Arguments.createMap();
+      snapshot.putInt("state", status.state.ordinal());
+      if (status.activeStationId != null) {
+        snapshot.putInt("activeStationId", status.activeStationId);
+      }
+      if (status.play != null) {
+        snapshot.putMap("play", convertPlay(status.play, status.canSkip));
+      }
+      snapshot.putDouble("elapsed", status.currentElapsed());
+      snapshot.putBoolean("canSkip", status.canSkip);
+      snapshot.putBoolean("canLike", status.canLike);
+      snapshot.putDouble("maxSeekableLengthInSeconds", status.maxSeekableLengthInSeconds);
+      snapshot.putDouble("volume", status.volume);
+      promise.resolve(snapshot);
+
+    } catch (JSONException e) {
+      promise.reject("snapshot-failed", e);
+    }
+  }
+
+  @ReactMethod
+  public void maxSeekableLengthInSeconds(Promise promise) {
+    promise.resolve((double) mStatus.maxSeekableLengthInSeconds);
+  }
+
+  @ReactMethod
+  public void seekCurrentStationBy(float seconds) {
+    mProgressAnchors.invalidate();
+    mCommandMetrics.arrived(PlayerCommandQueue.Type.SEEK);
+    mCommandQueue.seek(seconds);
+  }
+
+  /**
+   * Resolve with latency percentiles (in milliseconds) for each command type,
+   * measured from the command's arrival to the SDK confirming it.
+   */
+  @ReactMethod
+  public void getMetrics(Promise promise) {
+    promise.resolve(mCommandMetrics.toMap());
+  }
+
+  /**
+   * Resolve with playback quality figures (startup and skip-to-audio latency,
+   * stalls, rebuffer ratio) for this session and for each station played.
+   */
+  @ReactMethod
+  public void getQoeSnapshot(Promise promise) {
+    promise.resolve(mQoeTracker.snapshot(true));
+  }
+
+  /**
+   * Send a 'qoe-summary' event with the session figures every intervalMs
+   * milliseconds; 0 turns the event off.
+   */
+  @ReactMethod
+  public void setQoeSummaryInterval(int intervalMs) {
+    mQoeTracker.setSummaryInterval(intervalMs);
+  }
+
+  @ReactMethod
+  public void resetMetrics() {
+    mCommandMetrics.reset();
+  }
+
+  /**
+   * Resolve with per-command counts of executed, coalesced and dropped commands,
+   * and the average and maximum time commands waited in the queue.
+   */
+  @ReactMethod
+  public void getCommandQueueStats(Promise promise) {
+    promise.resolve(mCommandQueue.getStats());
+  }
+
+  /**
+   * Choose whether play-started events for audio files javascript has already
+   * seen carry only the id and the fields that change, and how many bytes of
+   * audio file details javascript may hold on to.
+   */
+  @ReactMethod
+  public void setMetadataCache(boolean enabled, int maxBytes) {
+    mMetadataCache.configure(enabled, maxBytes);
+  }
+
+  /**
+   * Forget every cached audio file, so the next play of each sends full details.
+   */
+  @ReactMethod
+  public void invalidateMetadataCache() {
+    resetMetadataCache();
+  }
+
+  @ReactMethod
+  public void getMetadataCacheStats(Promise promise) {
+    WritableMap stats = Arguments.createMap();
+    stats.putBoolean("enabled", mMetadataCache.isEnabled());
+    stats.putInt("entries", mMetadataCache.size());
+    stats.putDouble("bytes", mMetadataCache.sizeInBytes());
+    stats.putDouble("hits", mMetadataCache.getHits());
+    stats.putDouble("misses", mMetadataCache.getMisses());
+    stats.putDouble("evictions", mMetadataCache.getEvictions());
+    promise.resolve(stats);
+  }
+
+  /**
+   * Resolve with the time each SDK callback spent on the main thread, and the
+   * time spent building and sending events off it, in microseconds.
+   * See EventSerializer.
+   */
+  @ReactMethod
+  public void getCallbackStats(Promise promise) {
+    promise.resolve(mSerializer.getStats());
+  }
+
+  @ReactMethod
+  public void resetCallbackStats() {
+    mSerializer.resetStats();
+  }
+
   @Override
   public Map<String, Object> getConstants() {
     final Map<String, Object> constants = new HashMap<>();
@@ -325,7 +742,49 @@ public class RNFMAudioPlayerModule extends ReactContextBaseJavaModule
   }
 
   @Override
-  public void onStateChanged(State state) {
+  public void onStateChanged(final State state) {
+    onMainThread("onStateChanged", new Runnable() {
+      @Override
+      public void run() {
+        stateChanged(state);
+      }
+    });
+  }
+
+  private void stateChanged(State state) {
+    mStatus = mStatus.withState(state);
+    refreshStatus();
+    mCommandQueue.setState(state);
+
+    switch (state) {
+      case PLAYING:
+        mCommandMetrics.confirmed(PlayerCommandQueue.Type.PLAY);
+        mQoeTracker.playing();
+        startPendingCrossfade();
+        break;
+      case PAUSED:
+        mCommandMetrics.confirmed(PlayerCommandQueue.Type.PAUSE);
+        mQoeTracker.stopped();
+        break;
+      case READY_TO_PLAY:
+        mCommandMetrics.confirmed(PlayerCommandQueue.Type.STOP);
+        mQoeTracker.stopped();
+        break;
+      case STALLED:
+      case WAITING_FOR_ITEM:
+        mQoeTracker.stalled();
+        break;
+      default:
+        mQoeTracker.stopped();
+        break;
+    }
+
+    if ((state == State.UNAVAILABLE) || (state == State.AVAILABLE_OFFLINE_ONLY)) {
+      setAvailable(false);
+    } else if (state != State.UNINITIALIZED) {
+      setAvailable(true);
+    }
+
     WritableMap params = Arguments.createMap();
     switch (state) {
       case PAUSED:
@@ -354,53 +813,163 @@ public class RNFMAudioPlayerModule extends ReactContextBaseJavaModule
         break;
     }
 
-    sendEvent(reactContext, "state-change", params);
+    emit("state-change", params);
 
+    WritableMap anchor = mProgressAnchors.stateChanged(state == State.PLAYING);
+    if (anchor != null && mProgressEvents) {
+      emit("progress-anchor", anchor);
+    }
   }
 
   @Override
-  public void onStationChanged(Station station) {
+  public void onStationChanged(final Station station) {
+    onMainThread("onStationChanged", new Runnable() {
+      @Override
+      public void run() {
+        stationChanged(station);
+      }
+    });
+  }
+
+  private void stationChanged(Station station) {
+    mQoeTracker.stationChanged(String.valueOf(station.getId()));
+    mStatus = mStatus.withActiveStationId(station.getId());
 
     WritableMap params = Arguments.createMap();
     params.putInt("activeStationId", station.getId());
-    sendEvent(reactContext, "station-change", params);
+    emit("station-change", params);
+    mSessionCache.saveActiveStation(station.getId());
 
   }
 
   @Override
-  public void onSkipStatusChanged(boolean b) {
+  public void onSkipStatusChanged(final boolean b) {
+    onMainThread("onSkipStatusChanged", new Runnable() {
+      @Override
+      public void run() {
+        skipStatusChanged(b);
+      }
+    });
+  }
 
+  private void skipStatusChanged(boolean b) {
+    mStatus = mStatus.withCanSkip(b);
   }
 
   @Override
-  public void onProgressUpdate(@NotNull Play play, float v, float v1) {
+  public void onProgressUpdate(@NotNull Play play, final float v, float v1) {
+    onMainThread("onProgressUpdate", new Runnable() {
+      @Override
+      public void run() {
+        progressUpdated(v);
+      }
+    });
+  }
+
+  // runs on every tick, so only the elapsed time is updated here - the rest of the
+  // status is refreshed on state, play and skip changes
+  private void progressUpdated(float v) {
+    if (mSeekExecuted) {
+      // the first progress reported from the new position
+      mSeekExecuted = false;
+      mCommandMetrics.confirmed(PlayerCommandQueue.Type.SEEK);
+    }
+    mStatus = mStatus.withElapsed(v);
+
+    if (!mProgressEvents) {
+      return;
+    }
+
+    if (mProgressAnchors.isEnabled()) {
+      WritableMap anchor = mProgressAnchors.progressUpdated(v);
+      if (anchor != null) {
+        emit("progress-anchor", anchor);
+      }
+      return;
+    }
+
     WritableMap params = Arguments.createMap();
     params.putDouble("elapsed", v);
-    sendEvent(reactContext, "elapse", params);
+    emit("elapse", params);
   }
 
   @Override
-  public void onPlayStarted(Play play) {
+  public void onPlayStarted(final Play play) {
+    onMainThread("onPlayStarted", new Runnable() {
+      @Override
+      public void run() {
+        playStarted(play);
+      }
+    });
+  }
+
+  private void playStarted(final Play play) {
+    mCommandMetrics.confirmed(PlayerCommandQueue.Type.SKIP);
+    mQoeTracker.playStarted();
+    refreshStatus();
+
     if (play == null || play.getStation() == null)
       return;
-    String str = toJson(play.getAudioFile().getMetadata());
 
+    mStatus = mStatus.withPlay(play);
+
+    final boolean canSkip = mFeedAudioPlayer.canSkip();
+    final WritableMap anchor = (mProgressAnchors.isEnabled() && mProgressEvents) ? mProgressAnchors.playStarted() : null;
+
+    mSerializer.post(new Runnable() {
+      @Override
+      public void run() {
+        sendPlayStarted(play, canSkip, anchor);
+      }
+    });
+  }
+
+  // runs on the serializer thread, which owns the metadata cache
+  private void sendPlayStarted(Play play, boolean canSkip, WritableMap anchor) {
     try {
-      JSONObject object = new JSONObject(str);
-      WritableMap options = convertJsonToMap(object);
+      String audioFileId = play.getAudioFile().getId();
       WritableMap playParams = Arguments.createMap();
-      playParams.putMap("metadata", options);
-      playParams.putString("id", play.getAudioFile().getId());
-      playParams.putString("title", play.getAudioFile().getTrack().getTitle());
-      playParams.putString("artist", play.getAudioFile().getArtist().getName());
-      playParams.putString("album", play.getAudioFile().getRelease().getTitle());
-      playParams.putString("artist", play.getAudioFile().getArtist().getName());
-      playParams.putBoolean("canSkip", mFeedAudioPlayer.canSkip());
-      playParams.putInt("duration", (int) play.getAudioFile().getDurationInSeconds());
+      playParams.putString("id", audioFileId);
+
+      if (mMetadataCache.touch(audioFileId)) {
+        // javascript fills in the rest from its own copy
+        playParams.putString("metadata_cache", "hit");
+
+      } else {
+        WritableMap options = convertModelToMap(play.getAudioFile().getMetadata());
+        String title = play.getAudioFile().getTrack().getTitle();
+        String artist = play.getAudioFile().getArtist().getName();
+        String album = play.getAudioFile().getRelease().getTitle();
+
+        if (mMetadataCache.isEnabled()) {
+          int size = MetadataCache.estimateSize(options) + MetadataCache.estimateSize(audioFileId)
+              + MetadataCache.estimateSize(title) + MetadataCache.estimateSize(artist)
+              + MetadataCache.estimateSize(album);
+
+          WritableArray evicted = Arguments.createArray();
+          for (String id : mMetadataCache.add(audioFileId, size)) {
+            evicted.pushString(id);
+          }
+          playParams.putString("metadata_cache", "miss");
+          playParams.putArray("metadata_evicted", evicted);
+        }
+
+        playParams.putMap("metadata", options);
+        playParams.putString("title", title);
+        playParams.putString("artist", artist);
+        playParams.putString("album", album);
+        playParams.putInt("duration", (int) play.getAudioFile().getDurationInSeconds());
+      }
+
+      playParams.putBoolean("canSkip", canSkip);
       playParams.putInt("station_id", play.getStation().getId());
       WritableMap params = Arguments.createMap();
       params.putMap("play", playParams);
-      sendEvent(reactContext, "play-started", params);
+      emit("play-started", params);
+
+      if (anchor != null) {
+        emit("progress-anchor", anchor);
+      }
 
     } catch (JSONException e) {
       e.printStackTrace();
@@ -410,16 +979,466 @@ public class RNFMAudioPlayerModule extends ReactContextBaseJavaModule
 
   // Skip
   @Override
-  public void requestCompleted(boolean b) {
+  public void requestCompleted(final boolean b) {
+    onMainThread("requestCompleted", new Runnable() {
+      @Override
+      public void run() {
+        skipRequestCompleted(b);
+      }
+    });
+  }
+
+  private void skipRequestCompleted(boolean b) {
+    refreshStatus();
     if (!b) {
+      mCommandMetrics.cancelled(PlayerCommandQueue.Type.SKIP);
+      mQoeTracker.skipFailed();
       WritableMap params = Arguments.createMap();
-      sendEvent(reactContext, "skip-failed", params);
+      emit("skip-failed", params);
     }
 
   }
 
+  /**
+   * Send the session saved by a previous run, if any, as an 'availability'
+   * event marked provisional. Its stations are recorded as sent, so the
+   * confirmed availability that follows carries a 'stations-diff' instead.
+   */
+  private void sendProvisionalAvailability(String token) {
+    SessionCache.Entry entry = mSessionCache.load(token);
+    if (entry == null) {
+      return;
+    }
+
+    try {
+      WritableMap params = Arguments.createMap();
+      params.putBoolean("available", true);
+      params.putBoolean("provisional", true);
+      params.putArray("stations", convertJsonToArray(entry.stations));
+      params.putInt("activeStationId", entry.activeStationId);
+      params.putString("clientID", entry.clientId);
+
+      mStationSnapshot.seed(entry.order, entry.hashes);
+      synchronized (mProvisionalLock) {
+        mStationsProvisional = true;
+      }
+      emit("availability", params);
+
+    } catch (JSONException e) {
+      Log.e(TAG, "Unable to send cached session", e);
+    }
+  }
+
+  private void sessionUpdated() {
+    mStationWarmer.clear();
+    mStatus = mStatus.withActiveStationId(mFeedAudioPlayer.getActiveStation().getId());
+
+    Log.i(TAG, "generating a new session");
+
+    sendSession("session-updated", Arguments.createMap(), mFeedAudioPlayer);
+  }
+
+  private void initialize(final String token, String secret, boolean enableBackgroundMusic) {
+    mQoeTracker.reset();
+    mStatus = PlayerStatus.INITIAL;
+    mToken = token;
+
+    mSerializer.post(new Runnable() {
+      @Override
+      public void run() {
+        mStationSnapshot.reset();
+        mStationIndex.clear();
+        synchronized (mProvisionalLock) {
+          mStationsProvisional = false;
+          mPendingActiveStation = null;
+        }
+        sendProvisionalAvailability(token);
+      }
+    });
+
+    FeedAudioPlayer.setDisableAudioFocus(false);
+    AvailabilityListener listener = new AvailabilityListener() {
+      @Override
+      public void onPlayerAvailable(@NotNull final FeedAudioPlayer feedAudioPlayer) {
+        onMainThread("onPlayerAvailable", new Runnable() {
+          @Override
+          public void run() {
+            playerAvailable(feedAudioPlayer);
+          }
+        });
+      }
+
+      @Override
+      public void onPlayerUnavailable(Exception e) {
+        onMainThread("onPlayerUnavailable", new Runnable() {
+          @Override
+          public void run() {
+            playerUnavailable();
+          }
+        });
+      }
+    };
+
+    if (enableBackgroundMusic) {
+      FeedPlayerService.initialize(reactContext, token, secret);
+      mFeedAudioPlayer = FeedPlayerService.getInstance();
+      FeedPlayerService.getInstance(listener);
+
+
+    } else {
+      mFeedAudioPlayer = new FeedAudioPlayer.Builder(reactContext, token, secret).setAvailabilityListener(listener)
+          .build();
+    }
+    mFeedAudioPlayer.addPlayListener(RNFMAudioPlayerModule.this);
+    mFeedAudioPlayer.addSkipListener(RNFMAudioPlayerModule.this);
+    mFeedAudioPlayer.addStationChangedListener(RNFMAudioPlayerModule.this);
+    mFeedAudioPlayer.addStateListener(RNFMAudioPlayerModule.this);
+  }
+
+  @Override
+  public void onCatalystInstanceDestroy() {
+    super.onCatalystInstanceDestroy();
+    mQoeTracker.setSummaryInterval(0);
+    mSerializer.quit();
+    mLogEventPipeline.quit();
+    mSessionCache.quit();
+  }
+
+  // stands in for initialize() in tests, which have no SDK to build a player with
+  void setFeedAudioPlayer(FeedAudioPlayer player) {
+    mFeedAudioPlayer = player;
+  }
+
+  private void playerAvailable(FeedAudioPlayer feedAudioPlayer) {
+    mFeedAudioPlayer = feedAudioPlayer;
+    setAvailable(true);
+    refreshStatus();
+    mStationWarmer.clear();
+
+    int activeStationId = feedAudioPlayer.getActiveStation().getId();
+    mQoeTracker.stationChanged(String.valueOf(activeStationId));
+    mStatus = mStatus.withActiveStationId(activeStationId);
+
+    WritableMap params = Arguments.createMap();
+    params.putBoolean("available", true);
+    sendSession("availability", params, feedAudioPlayer);
+  }
+
+  private void playerUnavailable() {
+    setAvailable(false);
+
+    mSerializer.post(new Runnable() {
+      @Override
+      public void run() {
+        // javascript drops provisional stations, so the next list must be sent in full
+        mStationSnapshot.reset();
+
+        WritableMap params = Arguments.createMap();
+        params.putBoolean("available", false);
+        emit("availability", params);
+        mSessionCache.clear();
+      }
+    });
+  }
+
+  /**
+   * Copy the session from the player, then index its stations, add them (or
+   * the changes to them) to the given event, send it and save the session,
+   * all on the serializer thread.
+   */
+  private void sendSession(final String eventName, final WritableMap params, FeedAudioPlayer player) {
+    // a copy, in case the player changes its list while the task waits
+    final List<Station> stations = new ArrayList<>(player.getStationList());
+    final String clientId = player.getClientId();
+    final int activeStationId = player.getActiveStation().getId();
+
+    params.putString("clientID", clientId);
+    params.putInt("activeStationId", activeStationId);
+
+    mSerializer.post(new Runnable() {
+      @Override
+      public void run() {
+        mStationIndex.rebuild(stations);
+        setPendingActiveStation();
+        clearMetadataCache();
+        putStations(params, stations);
+        emit(eventName, params);
+        saveSession(clientId, activeStationId, stations);
+      }
+    });
+  }
+
+  // runs on the serializer thread, once the player's stations are indexed
+  private void setPendingActiveStation() {
+    Integer pending;
+    synchronized (mProvisionalLock) {
+      mStationsProvisional = false;
+      pending = mPendingActiveStation;
+      mPendingActiveStation = null;
+    }
+
+    if (pending != null) {
+      setActiveStation(pending);
+    }
+  }
+
+  private void saveSession(String clientId, int activeStationId, List<Station> stations) {
+    mSessionCache.save(mToken, clientId, activeStationId, stations,
+        mStationSnapshot.getOrder(), mStationSnapshot.getHashes());
+  }
+
+  // every event leaves from the serializer thread, in the order emitted
+  private void emit(final String eventName, final WritableMap params) {
+    if (mSerializer.isCurrentThread()) {
+      sendEvent(reactContext, moduleEvent(getName(), eventName), params);
+      return;
+    }
+
+    mSerializer.post(new Runnable() {
+      @Override
+      public void run() {
+        sendEvent(reactContext, moduleEvent(getName(), eventName), params);
+      }
+    });
+  }
+
+  /**
+   * Run the given code on the main thread, which owns the module's state and
+   * is where the SDK expects to be called: right away when already there,
+   * otherwise queued behind earlier work so order is kept.
+   */
+  private void onMainThread(Runnable runnable) {
+    if (Looper.myLooper() == Looper.getMainLooper()) {
+      runnable.run();
+    } else {
+      mMainHandler.post(runnable);
+    }
+  }
+
+  // as above, recording how long the named SDK callback keeps the main thread busy
+  private void onMainThread(final String callback, final Runnable runnable) {
+    onMainThread(new Runnable() {
+      @Override
+      public void run() {
+        long startedAt = System.nanoTime();
+        runnable.run();
+        mSerializer.callbackFinished(callback, startedAt);
+      }
+    });
+  }
+
+  // read the skip, like and seek values from the player into mStatus
+  private void refreshStatus() {
+    onMainThread(mRefreshStatus);
+  }
+
+  private void startPendingCrossfade() {
+    PendingCrossfade crossfade = mPendingCrossfade;
+    mPendingCrossfade = null;
+
+    if (crossfade != null) {
+      crossfade.start();
+    }
+  }
+
+  static WritableMap fadeResult(boolean completed, float volume) {
+    WritableMap result = Arguments.createMap();
+    result.putBoolean("completed", completed);
+    result.putDouble("volume", volume);
+    return result;
+  }
+
+  private void resetMetadataCache() {
+    mSerializer.post(new Runnable() {
+      @Override
+      public void run() {
+        clearMetadataCache();
+      }
+    });
+  }
+
+  // runs on the serializer thread, so javascript drops its copies before any
+  // play that relies on the reset
+  private void clearMetadataCache() {
+    mMetadataCache.clear();
+    emit("metadata-cache-reset", Arguments.createMap());
+  }
+
+  /**
+   * The first time stations are sent to javascript, the full list goes in the
+   * 'stations' property of the given event. After that, only the differences
+   * from the last list sent are emitted, in a 'stations-diff' event that
+   * precedes the given event.
+   */
+  private void putStations(WritableMap params, List<Station> stations) {
+    if (!mStationSnapshot.hasBeenSent()) {
+      params.putArray("stations", mStationSnapshot.full(stations));
+    } else {
+      emit("stations-diff", mStationSnapshot.diff(stations));
+    }
+  }
+
+  // runs on the main thread, in the order commands were issued
+  private void executeCommand(PlayerCommandQueue.Command command) {
+    if (mFeedAudioPlayer == null) {
+      Log.e(TAG, "Ignoring " + command.type + " because the player has not been initialized");
+      return;
+    }
+
+    switch (command.type) {
+      case PLAY:
+        mFeedAudioPlayer.play();
+        break;
+
+      case PAUSE:
+        mFeedAudioPlayer.pause();
+        break;
+
+      case STOP:
+        mFeedAudioPlayer.stop();
+        break;
+
+      case SKIP:
+        mFeedAudioPlayer.skip();
+        break;
+
+      case SEEK:
+        mFeedAudioPlayer.seekCurrentStationBy(command.seconds);
+        mSeekExecuted = true;
+        break;
+
+      case SET_ACTIVE_STATION:
+        mFeedAudioPlayer.setActiveStation(command.station, false);
+        mFeedAudioPlayer.prepareToPlay(command.station, new MusicQueuedListener() {
+          @Override
+          public void onError(@NonNull FeedFMError feedFMError) {
+            Log.e(TAG, "Error: failed to prepareToPlay"+ feedFMError.getMessage());
+            mCommandMetrics.cancelled(PlayerCommandQueue.Type.SET_ACTIVE_STATION);
+          }
+
+          @Override
+          public void onMusicQueued() {
+            mCommandMetrics.confirmed(PlayerCommandQueue.Type.SET_ACTIVE_STATION);
+            WritableMap params = Arguments.createMap();
+            emit("musicQueued", params);
+          }
+
+        });
+        break;
+    }
+  }
+
+  private void setAvailable(boolean available) {
+    boolean wasAvailable = mAvailable;
+    mAvailable = available;
+
+    if (available && !wasAvailable) {
+      mLogEventPipeline.onAvailable();
+    }
+  }
+
+  // the play as sent in a full 'play-started' event
+  private static WritableMap convertPlay(Play play, boolean canSkip) throws JSONException {
+    WritableMap map = Arguments.createMap();
+    map.putString("id", play.getAudioFile().getId());
+    map.putMap("metadata", convertModelToMap(play.getAudioFile().getMetadata()));
+    map.putString("title", play.getAudioFile().getTrack().getTitle());
+    map.putString("artist", play.getAudioFile().getArtist().getName());
+    map.putString("album", play.getAudioFile().getRelease().getTitle());
+    map.putInt("duration", (int) play.getAudioFile().getDurationInSeconds());
+    map.putBoolean("canSkip", canSkip);
+    if (play.getStation() != null) {
+      map.putInt("station_id", play.getStation().getId());
+    }
+    return map;
+  }
+
+  private static WritableMap convertStation(Station station) throws JSONException {
+    WritableMap map = convertModelToMap(station);
+    map.putBoolean("hasNewMusic", station.hasNewMusic());
+    return map;
+  }
+
   @Override
   public void onPlayerError(@NonNull FeedFMError feedFMError) {
     Log.e(TAG, "Player error" + feedFMError.getMessage());
   }
+
+  /**
+   * A crossfadeFromSimulcast() call waiting for the player to start playing,
+   * with the player silenced meanwhile. Only used on the main thread.
+   */
+  private class PendingCrossfade {
+
+    final RNFMSimulcastStreamer simulcast;
+    // the player's volume before it was silenced
+    final float destination;
+    final int durationMs;
+    final VolumeChannel.Curve curve;
+    final boolean disconnectSimulcast;
+    final Promise promise;
+
+    final Runnable timeout = new Runnable() {
+      @Override
+      public void run() {
+        if (mPendingCrossfade != PendingCrossfade.this) {
+          return;
+        }
+
+        mPendingCrossfade = null;
+        mVolumeChannel.set(destination);
+        promise.reject("crossfade-timeout", "the player did not start playing within "
+            + CROSSFADE_START_TIMEOUT_MS + "ms");
+      }
+    };
+
+    PendingCrossfade(RNFMSimulcastStreamer simulcast, float destination, int durationMs, VolumeChannel.Curve curve,
+                     boolean disconnectSimulcast, Promise promise) {
+      this.simulcast = simulcast;
+      this.destination = destination;
+      this.durationMs = durationMs;
+      this.curve = curve;
+      this.disconnectSimulcast = disconnectSimulcast;
+      this.promise = promise;
+    }
+
+    // a newer crossfade took over, keeping the player silenced
+    void replaced() {
+      mMainHandler.removeCallbacks(timeout);
+      promise.reject("crossfade-cancelled", "replaced by a newer crossfade");
+    }
+
+    void start() {
+      mMainHandler.removeCallbacks(timeout);
+
+      final float simulcastVolume = (simulcast != null) ? simulcast.getVolume() : 0;
+
+      VolumeChannel.FadeListener listener = new VolumeChannel.FadeListener() {
+        int remaining = (simulcast != null) ? 2 : 1;
+        boolean allCompleted = true;
+
+        @Override
+        public void finished(boolean completed, float volume) {
+          synchronized (this) {
+            allCompleted &= completed;
+            if (--remaining > 0) {
+              return;
+            }
+          }
+
+          if (simulcast != null && disconnectSimulcast && allCompleted) {
+            simulcast.disconnect(false);
+            // so the stream isn't silent when it next connects
+            simulcast.setVolume(simulcastVolume);
+          }
+          promise.resolve(fadeResult(allCompleted, mVolumeChannel.getVolume()));
+        }
+      };
+
+      mVolumeChannel.fadeTo(0, destination, durationMs, curve, listener);
+      if (simulcast != null) {
+        simulcast.fadeTo(0, durationMs, curve, listener);
+      }
+    }
+  }
 }
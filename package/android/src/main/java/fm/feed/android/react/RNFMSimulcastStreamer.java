@@ -2,8 +2,11 @@ package fm.feed.android.react;
 
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
 
 import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
@@ -15,6 +18,7 @@ import org.json.JSONObject;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Random;
 import java.util.logging.Logger;
 
 import fm.feed.android.playersdk.FMLog;
@@ -26,20 +30,115 @@ import fm.feed.android.playersdk.State;
 import fm.feed.android.playersdk.models.Play;
 
 import static fm.feed.android.react.Utils.convertJsonToMap;
+import static fm.feed.android.react.Utils.convertModelToMap;
+import static fm.feed.android.react.Utils.moduleEvent;
 import static fm.feed.android.react.Utils.sendEvent;
 import static fm.feed.android.react.Utils.toJson;
 
 class RNFMSimulcastStreamer extends ReactContextBaseJavaModule {
 
     public final static String TAG = RNFMSimulcastStreamer.class.getName();
+
+    private final static int DEFAULT_PRECONNECT_TIMEOUT_MS = 60 * 1000;
     Handler mainHandler = new Handler(Looper.getMainLooper());
 
     private final ReactApplicationContext reactContext;
-    private FeedSimulcastStreamer streamer;
+    // written on the bridge thread, read on the main thread
+    private volatile Stream stream;
+    // stream set aside, after a non-forced disconnect, when initialize() switched
+    // to another token; reused if initialize() switches back to its token
+    private volatile Stream spare;
+
+    // while warming, the streamer is connected but muted and its playback isn't reported
+    private volatile boolean warming = false;
+    // a warm stream that wasn't asked for in time was disconnected; warming stays set,
+    // so that isn't reported either, until the next connect() or preconnect()
+    private volatile boolean warmExpired = false;
+
+    // when connect() was called, and whether the stream was pre-connected then
+    private volatile long connectRequestedAt = 0;
+    private volatile boolean connectWasWarm = false;
+    private final LatencyHistogram coldStartLatency = new LatencyHistogram();
+    private final LatencyHistogram warmStartLatency = new LatencyHistogram();
+    private long preconnects;
+    private long reuses;
+    private long preconnectsExpired;
+
+    // gives up on a preconnected stream nobody asked to hear
+    private final Runnable warmTimeout = new Runnable() {
+        @Override
+        public void run() {
+            Stream localStream = stream;
+            if (!warming || warmExpired || localStream == null) {
+                return;
+            }
+
+            warmExpired = true;
+            preconnectsExpired++;
+            localStream.streamer.disconnect();
+        }
+    };
+    private final ProgressAnchors progressAnchors = new ProgressAnchors();
+    private final QoeTracker qoeTracker;
+    private final VolumeChannel volumeChannel = new VolumeChannel(new VolumeChannel.Target() {
+        @Override
+        public void apply(float volume) {
+            Stream localStream = stream;
+            if (localStream != null) {
+                localStream.streamer.setVolume(warming ? 0 : volume);
+            }
+        }
+    });
+
+    private final SimulcastSupervisor supervisor = new SimulcastSupervisor(mainHandler,
+            new SimulcastSupervisor.Target() {
+                @Override
+                public void reconnect() {
+                    Stream localStream = stream;
+                    if (localStream != null) {
+                        localStream.streamer.disconnect();
+                        localStream.streamer.connect();
+                    }
+                }
+            },
+            new SimulcastSupervisor.Listener() {
+                @Override
+                public void reconnectScheduled(int attempt, long delayMs) {
+                    WritableMap params = Arguments.createMap();
+                    params.putString("status", "scheduled");
+                    params.putInt("attempt", attempt);
+                    params.putDouble("delayMs", delayMs);
+                    emit("reconnect", params);
+                }
+
+                @Override
+                public void recovered(int attempts, long recoveryMs) {
+                    WritableMap params = Arguments.createMap();
+                    params.putString("status", "recovered");
+                    params.putInt("attempt", attempts);
+                    params.putDouble("recoveryMs", recoveryMs);
+                    emit("reconnect", params);
+                }
+
+                @Override
+                public void gaveUp(int attempts) {
+                    WritableMap params = Arguments.createMap();
+                    params.putString("status", "failed");
+                    params.putInt("attempt", attempts);
+                    emit("reconnect", params);
+                }
+            },
+            new Random());
 
     public RNFMSimulcastStreamer(ReactApplicationContext reactContext) {
         super(reactContext);
         this.reactContext = reactContext;
+        this.qoeTracker = new QoeTracker(new QoeTracker.Listener() {
+            @Override
+            public void summary(WritableMap params) {
+                emit("qoe-summary", params);
+            }
+        });
     }
 
     @Override
@@ -56,110 +155,395 @@ class RNFMSimulcastStreamer extends ReactContextBaseJavaModule {
         return constants;
     }
 
-    private SimulcastEventListener listener = new SimulcastEventListener() {
+    /**
+     * A streamer for one token, and the last state and play it reported. Each
+     * streamer is its own listener, so one that is no longer current (set aside
+     * or discarded) only updates its own state.
+     */
+    private final class Stream implements SimulcastEventListener {
+
+        final String token;
+        final FeedSimulcastStreamer streamer;
+        volatile SimulcastPlaybackState lastState;
+        volatile Play lastPlay;
+
+        Stream(String token) {
+            this.token = token;
+            this.streamer = new FeedSimulcastStreamer(reactContext, token, this);
+        }
+
         @Override
         public void onPlayItemBeganPlayback(@NotNull Play play) {
-
-            String str  = toJson(play.getAudioFile().getMetadata());
-
-            try {
-                JSONObject object = new JSONObject(str);
-                WritableMap options  = convertJsonToMap(object);
-                WritableMap playParams = Arguments.createMap();
-                playParams.putMap("metadata",options);
-                playParams.putString("title", play.getAudioFile().getTrack().getTitle());
-                playParams.putString("album", play.getAudioFile().getRelease().getTitle());
-                playParams.putString("artist", play.getAudioFile().getArtist().getName());
-                playParams.putInt("duration", (int)play.getAudioFile().getDurationInSeconds());
-                WritableMap params = Arguments.createMap();
-                params.putMap("play", playParams);
-                sendEvent(reactContext, "play-started", params);
-
-            } catch (JSONException e) {
-                e.printStackTrace();
+            lastPlay = play;
+            if (stream != this || warming) {
+                return;
             }
+
+            sendPlayStarted(play);
         }
 
         @Override
         public void onPlayerStateChanged(@NotNull SimulcastPlaybackState simulcastPlaybackState) {
+            lastState = simulcastPlaybackState;
 
-            WritableMap params = Arguments.createMap();
-            switch (simulcastPlaybackState)
-
-            {
-                case Idle:
-                    params.putInt("state", SimulcastPlaybackState.Idle.ordinal()); break;
-                case Playing:
-                    params.putInt("state", SimulcastPlaybackState.Playing.ordinal());
-                    break;
-                case Stalled:
-                    params.putInt("state", SimulcastPlaybackState.Stalled.ordinal());
-                    break;
-                case Stopped:
-                    params.putInt("state", SimulcastPlaybackState.Stopped.ordinal());
-                    break;
-                case Available:
-                    params.putInt("state", SimulcastPlaybackState.Available.ordinal());
-                    break;
-                case Unavailable:
-                    params.putInt("state", SimulcastPlaybackState.Unavailable.ordinal());
-                    break;
-                case Unintialized:
-                    params.putInt("state", SimulcastPlaybackState.Unintialized.ordinal());
+            if (stream != this || (warming && isPlaybackState(simulcastPlaybackState))) {
+                return;
+            }
+
+            if (simulcastPlaybackState == SimulcastPlaybackState.Playing) {
+                recordStartLatency();
             }
-            sendEvent(reactContext, "state-change", params);
+
+            reportState(simulcastPlaybackState);
         }
 
         @Override
         public void onProgressUpdate(@NotNull Play play, float v, float v1) {
+            if (stream != this || warming) {
+                return;
+            }
+
+            if (progressAnchors.isEnabled()) {
+                WritableMap anchor = progressAnchors.progressUpdated(v);
+                if (anchor != null) {
+                    emit("progress-anchor", anchor);
+                }
+                return;
+            }
+
             WritableMap params = Arguments.createMap();
             params.putDouble("elapsed",v);
-            sendEvent(reactContext, "elapse", params);
+            emit("elapse", params);
 
         }
 
         @Override
         public void onPlayerError(@NotNull Exception e) {
+            Log.e(TAG, "Simulcast player error: " + e.getMessage());
 
+            if (stream == this && !warming) {
+                supervisor.error();
+            }
         }
-    };
+    }
+
+    private void emit(String eventName, WritableMap params) {
+        sendEvent(reactContext, moduleEvent(getName(), eventName), params);
+    }
+
+    private void sendPlayStarted(Play play) {
+        try {
+            WritableMap options  = convertModelToMap(play.getAudioFile().getMetadata());
+            WritableMap playParams = Arguments.createMap();
+            playParams.putMap("metadata",options);
+            playParams.putString("title", play.getAudioFile().getTrack().getTitle());
+            playParams.putString("album", play.getAudioFile().getRelease().getTitle());
+            playParams.putString("artist", play.getAudioFile().getArtist().getName());
+            playParams.putInt("duration", (int)play.getAudioFile().getDurationInSeconds());
+            WritableMap params = Arguments.createMap();
+            params.putMap("play", playParams);
+            emit("play-started", params);
+
+            if (progressAnchors.isEnabled()) {
+                emit("progress-anchor", progressAnchors.playStarted());
+            }
+
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void sendState(SimulcastPlaybackState simulcastPlaybackState) {
+
+        WritableMap params = Arguments.createMap();
+        switch (simulcastPlaybackState)
+
+        {
+            case Idle:
+                params.putInt("state", SimulcastPlaybackState.Idle.ordinal()); break;
+            case Playing:
+                params.putInt("state", SimulcastPlaybackState.Playing.ordinal());
+                break;
+            case Stalled:
+                params.putInt("state", SimulcastPlaybackState.Stalled.ordinal());
+                break;
+            case Stopped:
+                params.putInt("state", SimulcastPlaybackState.Stopped.ordinal());
+                break;
+            case Available:
+                params.putInt("state", SimulcastPlaybackState.Available.ordinal());
+                break;
+            case Unavailable:
+                params.putInt("state", SimulcastPlaybackState.Unavailable.ordinal());
+                break;
+            case Unintialized:
+                params.putInt("state", SimulcastPlaybackState.Unintialized.ordinal());
+        }
+        emit("state-change", params);
+
+        switch (simulcastPlaybackState) {
+            case Playing:
+                qoeTracker.playing();
+                break;
+            case Stalled:
+                qoeTracker.stalled();
+                break;
+            default:
+                qoeTracker.stopped();
+                break;
+        }
+
+        WritableMap anchor = progressAnchors.stateChanged(simulcastPlaybackState == SimulcastPlaybackState.Playing);
+        if (anchor != null) {
+            emit("progress-anchor", anchor);
+        }
+    }
+
+    // tell javascript and the supervisor
+    private void reportState(SimulcastPlaybackState state) {
+        sendState(state);
+        supervisor.stateChanged(state);
+    }
+
+    // states that only occur once connect() has been called
+    private static boolean isPlaybackState(SimulcastPlaybackState state) {
+        return (state == SimulcastPlaybackState.Playing)
+                || (state == SimulcastPlaybackState.Stalled)
+                || (state == SimulcastPlaybackState.Stopped);
+    }
+
+    private void recordStartLatency() {
+        long requestedAt = connectRequestedAt;
+        if (requestedAt == 0) {
+            return;
+        }
+
+        connectRequestedAt = 0;
+        long latency = SystemClock.elapsedRealtime() - requestedAt;
+        if (connectWasWarm) {
+            warmStartLatency.record(latency);
+        } else {
+            coldStartLatency.record(latency);
+        }
+    }
 
     @Override
     public String getName() {
         return "RNFMSimulcastStreamer";
     }
 
+    /**
+     * Create a streamer for the given token. A streamer already created for the
+     * same token (current, or set aside when initialize() switched tokens) is
+     * reused, and its last known state is sent again. A streamer disconnected
+     * with force is never reused, so the next connect() checks the listener's
+     * location again.
+     */
     @ReactMethod
     public void initialize(String token){
-        if (streamer != null) {
-            disconnect(true);
+        Stream current = stream;
+        if (current != null && token.equals(current.token)) {
+            reuses++;
+            resendLastState();
+            return;
+        }
+
+        Stream previousSpare = spare;
+        Stream reused = (previousSpare != null && token.equals(previousSpare.token)) ? previousSpare : null;
+        spare = null;
+
+        if (current != null) {
+            disconnect(false);
+            spare = current;
+            stream = null;
         }
 
-        streamer = new FeedSimulcastStreamer(reactContext,token,listener );
+        qoeTracker.reset();
+        qoeTracker.stationChanged(token);
+        warming = false;
+        warmExpired = false;
+
+        if (reused != null) {
+            reuses++;
+            stream = reused;
+            resendLastState();
+            return;
+        }
+
+        stream = new Stream(token);
     }
 
+    /**
+     * Create the streamer (if needed) and connect it muted, without reporting
+     * playback, so that a later connect() only has to unmute it. The stream is
+     * disconnected again if connect() isn't called within timeoutMs.
+     */
     @ReactMethod
-    public void setVolume(final float volume){
-        final FeedSimulcastStreamer localStreamer = streamer;
+    public void preconnect(String token, int timeoutMs) {
+        initialize(token);
+
+        final Stream localStream = stream;
+        if (localStream == null) {
+            return;
+        }
 
-        if (localStreamer == null) {
+        if (warming ? !warmExpired : isPlaybackState(localStream.lastState)) {
+            // already connecting or connected
             return;
         }
 
+        preconnects++;
+        warming = true;
+        warmExpired = false;
         mainHandler.post(new Runnable() {
             @Override
             public void run() {
-                localStreamer.setVolume(volume);
+                localStream.streamer.setVolume(0);
+                localStream.streamer.connect();
+            }
+        });
+        mainHandler.removeCallbacks(warmTimeout);
+        mainHandler.postDelayed(warmTimeout, (timeoutMs > 0) ? timeoutMs : DEFAULT_PRECONNECT_TIMEOUT_MS);
+    }
+
+    /**
+     * Resolve with Idle to Playing latency percentiles (in milliseconds) for
+     * connects without and with preconnect(), and how much preconnect saved at
+     * the median.
+     */
+    @ReactMethod
+    public void getStartupStats(Promise promise) {
+        WritableMap map = Arguments.createMap();
+        map.putMap("cold", coldStartLatency.toMap());
+        map.putMap("warm", warmStartLatency.toMap());
+        map.putDouble("savedMsP50", (coldStartLatency.getCount() > 0 && warmStartLatency.getCount() > 0)
+                ? coldStartLatency.percentile(0.5) - warmStartLatency.percentile(0.5) : 0);
+        map.putDouble("preconnects", preconnects);
+        map.putDouble("preconnectsExpired", preconnectsExpired);
+        map.putDouble("reuses", reuses);
+        promise.resolve(map);
+    }
+
+    private void resendLastState() {
+        Stream localStream = stream;
+        SimulcastPlaybackState state = (localStream != null) ? localStream.lastState : null;
+        if (state != null && !(warming && isPlaybackState(state))) {
+            sendState(state);
+        }
+    }
+
+    @ReactMethod
+    public void setProgressAnchors(boolean enabled, int resyncIntervalMs) {
+        progressAnchors.configure(enabled, resyncIntervalMs);
+    }
+
+    /**
+     * Volume changes are applied on the main thread at most once per frame,
+     * keeping only the latest value.
+     */
+    @ReactMethod
+    public void setVolume(final float volume){
+        if (stream == null) {
+            return;
+        }
+
+        volumeChannel.set(volume);
+    }
+
+    /**
+     * Resolve with { requested, applied, coalesced, fades, fadesCancelled }
+     * counts of volume changes.
+     */
+    @ReactMethod
+    public void getVolumeStats(Promise promise) {
+        promise.resolve(volumeChannel.getStats());
+    }
+
+    /**
+     * Ramp the volume to target over durationMs natively, and resolve with
+     * { volume, completed } once the ramp finishes or is cancelled by another
+     * volume change. Curve is 'linear', 'ease-in', 'ease-out' or 'equal-power'.
+     */
+    @ReactMethod
+    public void fadeTo(float target, int durationMs, String curve, final Promise promise) {
+        fadeTo(target, durationMs, VolumeChannel.Curve.fromName(curve), new VolumeChannel.FadeListener() {
+            @Override
+            public void finished(boolean completed, float volume) {
+                promise.resolve(RNFMAudioPlayerModule.fadeResult(completed, volume));
             }
         });
     }
 
+    void fadeTo(float target, long durationMs, VolumeChannel.Curve curve, VolumeChannel.FadeListener listener) {
+        volumeChannel.fadeTo(target, durationMs, curve, listener);
+    }
+
+    float getVolume() {
+        return volumeChannel.getVolume();
+    }
+
 
     @ReactMethod
     public void connect(){
-        final FeedSimulcastStreamer localStreamer = streamer;
+        final Stream localStream = stream;
+
+        if (localStream == null) {
+            return;
+        }
+        final FeedSimulcastStreamer localStreamer = localStream.streamer;
 
-        if (localStreamer == null) {
+        if (supervisor.isRecovering()) {
+            // the supervisor is already reconnecting, on its own schedule
+            return;
+        }
+
+        supervisor.connectRequested();
+        qoeTracker.playRequested();
+        connectRequestedAt = SystemClock.elapsedRealtime();
+        final float volume = volumeChannel.getVolume();
+
+        if (warming && warmExpired) {
+            // the warm stream was already disconnected, so start from scratch, unmuted
+            warming = false;
+            warmExpired = false;
+            connectWasWarm = false;
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    localStreamer.setVolume(volume);
+                    localStreamer.connect();
+                }
+            });
+            return;
+        }
+
+        connectWasWarm = warming;
+
+        if (warming) {
+            warming = false;
+            mainHandler.removeCallbacks(warmTimeout);
+            final SimulcastPlaybackState state = localStream.lastState;
+            final Play play = localStream.lastPlay;
+
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    localStreamer.setVolume(volume);
+
+                    if (state == SimulcastPlaybackState.Playing) {
+                        recordStartLatency();
+                        if (play != null) {
+                            sendPlayStarted(play);
+                        }
+                        reportState(state);
+                    } else if (state == SimulcastPlaybackState.Stalled) {
+                        // still connecting - the Playing state will follow
+                        reportState(state);
+                    } else {
+                        localStreamer.connect();
+                    }
+                }
+            });
             return;
         }
 
@@ -173,27 +557,72 @@ class RNFMSimulcastStreamer extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void disconnect(boolean force) {
-        final FeedSimulcastStreamer localStreamer = streamer;
+        final Stream localStream = stream;
 
-        if (localStreamer == null) {
+        if (localStream == null) {
             return;
         }
 
+        qoeTracker.stopRequested();
+        supervisor.disconnectRequested();
+        warming = false;
+        warmExpired = false;
+        mainHandler.removeCallbacks(warmTimeout);
+        connectRequestedAt = 0;
         mainHandler.post(new Runnable() {
             @Override
             public void run() {
-                localStreamer.disconnect();
+                localStream.streamer.disconnect();
             }
         });
 
         if (force) {
-            streamer = null;
+            // discard it, and any spare, so the next connect() starts from scratch
+            stream = null;
+            spare = null;
         }
     }
 
+    /**
+     * Configure automatic reconnection: a stream stalled for stallThresholdMs,
+     * or dropped or failed while it should be playing, is reconnected after
+     * baseDelayMs, doubling up to maxDelayMs (with jitter), at most maxAttempts
+     * times in a row. Values of 0 keep the defaults.
+     */
+    @ReactMethod
+    public void setReconnectPolicy(boolean enabled, int stallThresholdMs, int baseDelayMs, int maxDelayMs,
+                                   int maxAttempts) {
+        supervisor.configure(enabled, stallThresholdMs, baseDelayMs, maxDelayMs, maxAttempts);
+    }
+
+    /**
+     * Resolve with reconnect counts and the time spent recovering.
+     */
+    @ReactMethod
+    public void getReconnectStats(Promise promise) {
+        promise.resolve(supervisor.getStats());
+    }
+
+    @ReactMethod
+    public void getQoeSnapshot(Promise promise) {
+        promise.resolve(qoeTracker.snapshot(true));
+    }
+
+    @ReactMethod
+    public void setQoeSummaryInterval(int intervalMs) {
+        qoeTracker.setSummaryInterval(intervalMs);
+    }
+
     @ReactMethod
     public void onHostDestroy() {
         disconnect(true);
+        spare = null;
+    }
+
+    @Override
+    public void onCatalystInstanceDestroy() {
+        super.onCatalystInstanceDestroy();
+        qoeTracker.setSummaryInterval(0);
     }
 
 }
@@ -0,0 +1,278 @@
+package fm.feed.android.react;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import fm.feed.android.playersdk.models.Station;
+
+/**
+ * Keeps the last session (client id, active station and station list) in
+ * shared preferences, so that after a cold start javascript can be handed a
+ * provisional station list before the player has contacted Feed.fm.
+ *
+ * The cached session is tied to the token it was saved under, expires after
+ * maxAgeMs, and is checked against a CRC32 before use. Saving happens on
+ * a background thread.
+ */
+class SessionCache {
+
+    public final static String TAG = SessionCache.class.getName();
+
+    public static final long DEFAULT_MAX_AGE_MS = 24 * 60 * 60 * 1000;
+
+    private static final String PREFERENCES_NAME = "rnfm-session-cache";
+    private static final String KEY_PAYLOAD = "payload";
+    private static final String KEY_CRC = "crc";
+    private static final int VERSION = 1;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    public static final class Entry {
+        public final String clientId;
+        public final int activeStationId;
+        public final JSONArray stations;
+        public final List<Integer> order;
+        public final Map<Integer, Integer> hashes;
+
+        Entry(String clientId, int activeStationId, JSONArray stations, List<Integer> order,
+              Map<Integer, Integer> hashes) {
+            this.clientId = clientId;
+            this.activeStationId = activeStationId;
+            this.stations = stations;
+            this.order = order;
+            this.hashes = hashes;
+        }
+    }
+
+    private final SharedPreferences preferences;
+    private volatile boolean enabled = true;
+    private volatile long maxAgeMs = DEFAULT_MAX_AGE_MS;
+    private Handler handler;
+
+    public SessionCache(Context context) {
+        this.preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    public void configure(boolean enabled, long maxAgeMs) {
+        this.enabled = enabled;
+        this.maxAgeMs = (maxAgeMs > 0) ? maxAgeMs : DEFAULT_MAX_AGE_MS;
+
+        if (!enabled) {
+            clear();
+        }
+    }
+
+    /**
+     * Return the session saved under the given token, or null if there is none,
+     * it has expired, or it is damaged.
+     */
+    public Entry load(String token) {
+        if (!enabled) {
+            return null;
+        }
+
+        String payload = preferences.getString(KEY_PAYLOAD, null);
+        if (payload == null) {
+            return null;
+        }
+
+        if (crcOf(payload) != preferences.getLong(KEY_CRC, -1)) {
+            Log.w(TAG, "Discarding damaged session cache");
+            clear();
+            return null;
+        }
+
+        try {
+            JSONObject object = new JSONObject(payload);
+
+            if (object.getInt("version") != VERSION || !digestOf(token).equals(object.getString("token"))) {
+                return null;
+            }
+
+            long age = System.currentTimeMillis() - object.getLong("savedAt");
+            if (age < 0 || age > maxAgeMs) {
+                clear();
+                return null;
+            }
+
+            List<Integer> order = new ArrayList<>();
+            JSONArray orderArray = object.getJSONArray("order");
+            for (int i = 0; i < orderArray.length(); i++) {
+                order.add(orderArray.getInt(i));
+            }
+
+            Map<Integer, Integer> hashes = new HashMap<>();
+            JSONObject hashObject = object.getJSONObject("hashes");
+            Iterator<String> keys = hashObject.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                hashes.put(Integer.parseInt(key), hashObject.getInt(key));
+            }
+
+            return new Entry(object.getString("clientId"), object.getInt("activeStationId"),
+                    object.getJSONArray("stations"), order, hashes);
+
+        } catch (JSONException | NumberFormatException e) {
+            Log.w(TAG, "Discarding unreadable session cache", e);
+            clear();
+            return null;
+        }
+    }
+
+    /**
+     * Save the session in the background. The order and hashes are those
+     * recorded by StationSnapshot for the same station list.
+     */
+    public void save(final String token, final String clientId, final int activeStationId,
+                     List<Station> stations, final List<Integer> order, final Map<Integer, Integer> hashes) {
+        if (!enabled || token == null || stations == null) {
+            return;
+        }
+
+        final List<Station> copy = new ArrayList<>(stations);
+
+        handler().post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    JSONArray stationArray = new JSONArray();
+                    for (Station station : copy) {
+                        JSONObject json = new JSONObject(Utils.toJson(station));
+                        json.put("hasNewMusic", station.hasNewMusic());
+                        stationArray.put(json);
+                    }
+
+                    JSONArray orderArray = new JSONArray();
+                    for (Integer id : order) {
+                        orderArray.put(id);
+                    }
+
+                    JSONObject hashObject = new JSONObject();
+                    for (Map.Entry<Integer, Integer> entry : hashes.entrySet()) {
+                        hashObject.put(String.valueOf(entry.getKey()), entry.getValue());
+                    }
+
+                    JSONObject object = new JSONObject();
+                    object.put("version", VERSION);
+                    object.put("token", digestOf(token));
+                    object.put("savedAt", System.currentTimeMillis());
+                    object.put("clientId", clientId);
+                    object.put("activeStationId", activeStationId);
+                    object.put("stations", stationArray);
+                    object.put("order", orderArray);
+                    object.put("hashes", hashObject);
+
+                    String payload = object.toString();
+                    preferences.edit()
+                            .putString(KEY_PAYLOAD, payload)
+                            .putLong(KEY_CRC, crcOf(payload))
+                            .apply();
+
+                } catch (JSONException e) {
+                    Log.e(TAG, "Unable to save session cache", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Update the active station of the saved session.
+     */
+    public void saveActiveStation(final int activeStationId) {
+        if (!enabled) {
+            return;
+        }
+
+        handler().post(new Runnable() {
+            @Override
+            public void run() {
+                String payload = preferences.getString(KEY_PAYLOAD, null);
+                if (payload == null || crcOf(payload) != preferences.getLong(KEY_CRC, -1)) {
+                    return;
+                }
+
+                try {
+                    JSONObject object = new JSONObject(payload);
+                    object.put("activeStationId", activeStationId);
+
+                    String updated = object.toString();
+                    preferences.edit()
+                            .putString(KEY_PAYLOAD, updated)
+                            .putLong(KEY_CRC, crcOf(updated))
+                            .apply();
+
+                } catch (JSONException e) {
+                    Log.e(TAG, "Unable to update session cache", e);
+                }
+            }
+        });
+    }
+
+    public void clear() {
+        handler().post(new Runnable() {
+            @Override
+            public void run() {
+                preferences.edit().remove(KEY_PAYLOAD).remove(KEY_CRC).apply();
+            }
+        });
+    }
+
+    /**
+     * Stop the cache's thread once the work already posted to it has run.
+     * Anything posted afterwards is dropped.
+     */
+    public synchronized void quit() {
+        if (handler != null) {
+            Utils.quitSafely(handler.getLooper());
+        }
+    }
+
+    private synchronized Handler handler() {
+        if (handler == null) {
+            HandlerThread thread = new HandlerThread("RNFMSessionCache", Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            handler = new Handler(thread.getLooper());
+        }
+        return handler;
+    }
+
+    private static long crcOf(String payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload.getBytes(UTF8));
+        return crc.getValue();
+    }
+
+    // the token is only kept as a digest, to tell sessions of different tokens apart
+    private static String digestOf(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] bytes = digest.digest(token.getBytes(UTF8));
+            StringBuilder builder = new StringBuilder();
+            for (byte b : bytes) {
+                builder.append(String.format("%02x", b));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return String.valueOf(token.hashCode());
+        }
+    }
+
+}
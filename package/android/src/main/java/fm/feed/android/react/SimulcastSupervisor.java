@@ -0,0 +1,248 @@
+package fm.feed.android.react;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.Random;
+
+import fm.feed.android.playersdk.SimulcastPlaybackState;
+
+/**
+ * Keeps a simulcast stream playing while the user wants it to. When the stream
+ * stalls for longer than the stall threshold, drops to idle/stopped without being
+ * asked to, or reports an error, the supervisor reconnects it with exponential
+ * backoff (plus random jitter), up to maxAttempts times in a row.
+ *
+ * All work happens on the handler passed in, and the streamer is only reached
+ * through Target, so the supervisor can be driven by a fake streamer.
+ */
+class SimulcastSupervisor {
+
+    public static final long DEFAULT_STALL_THRESHOLD_MS = 8000;
+    public static final long DEFAULT_BASE_DELAY_MS = 1000;
+    public static final long DEFAULT_MAX_DELAY_MS = 30000;
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+
+    public interface Target {
+        /**
+         * Drop the current connection and connect again.
+         */
+        void reconnect();
+    }
+
+    public interface Listener {
+        void reconnectScheduled(int attempt, long delayMs);
+
+        void recovered(int attempts, long recoveryMs);
+
+        void gaveUp(int attempts);
+    }
+
+    private final Handler handler;
+    private final Target target;
+    private final Listener listener;
+    private final Random random;
+
+    private boolean enabled = true;
+    private long stallThresholdMs = DEFAULT_STALL_THRESHOLD_MS;
+    private long baseDelayMs = DEFAULT_BASE_DELAY_MS;
+    private long maxDelayMs = DEFAULT_MAX_DELAY_MS;
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+    // the user wants the stream to be playing
+    private boolean active = false;
+    // time the current outage began, or 0 when playing normally
+    private long recoveringSince = 0;
+    private int attempts = 0;
+
+    private long reconnects;
+    private long recoveries;
+    private long failures;
+    private long totalRecoveryMs;
+    private long longestRecoveryMs;
+
+    private final Runnable watchdog = new Runnable() {
+        @Override
+        public void run() {
+            scheduleReconnect();
+        }
+    };
+
+    private final Runnable reconnect = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (SimulcastSupervisor.this) {
+                if (!active) {
+                    return;
+                }
+                reconnects++;
+                // give the new connection as long as a stall to start playing
+                handler.postDelayed(watchdog, stallThresholdMs);
+            }
+
+            target.reconnect();
+        }
+    };
+
+    public SimulcastSupervisor(Handler handler, Target target, Listener listener, Random random) {
+        this.handler = handler;
+        this.target = target;
+        this.listener = listener;
+        this.random = random;
+    }
+
+    public synchronized void configure(boolean enabled, long stallThresholdMs, long baseDelayMs,
+                                       long maxDelayMs, int maxAttempts) {
+        this.enabled = enabled;
+        this.stallThresholdMs = (stallThresholdMs > 0) ? stallThresholdMs : DEFAULT_STALL_THRESHOLD_MS;
+        this.baseDelayMs = (baseDelayMs > 0) ? baseDelayMs : DEFAULT_BASE_DELAY_MS;
+        this.maxDelayMs = Math.max((maxDelayMs > 0) ? maxDelayMs : DEFAULT_MAX_DELAY_MS, this.baseDelayMs);
+        this.maxAttempts = (maxAttempts > 0) ? maxAttempts : DEFAULT_MAX_ATTEMPTS;
+
+        if (!enabled) {
+            cancel();
+        }
+    }
+
+    /**
+     * The user asked for playback. A recovery under way carries on.
+     */
+    public synchronized void connectRequested() {
+        if (active && recoveringSince != 0) {
+            return;
+        }
+
+        active = true;
+        attempts = 0;
+        recoveringSince = 0;
+        cancelTimers();
+    }
+
+    /**
+     * The user asked playback to stop.
+     */
+    public synchronized void disconnectRequested() {
+        active = false;
+        cancel();
+    }
+
+    public synchronized void stateChanged(SimulcastPlaybackState state) {
+        if (!enabled || !active) {
+            return;
+        }
+
+        switch (state) {
+            case Playing:
+                cancelTimers();
+                if (recoveringSince != 0) {
+                    long recoveryMs = SystemClock.elapsedRealtime() - recoveringSince;
+                    int recoveredAfter = attempts;
+
+                    recoveries++;
+                    totalRecoveryMs += recoveryMs;
+                    longestRecoveryMs = Math.max(longestRecoveryMs, recoveryMs);
+                    recoveringSince = 0;
+                    attempts = 0;
+
+                    listener.recovered(recoveredAfter, recoveryMs);
+                }
+                break;
+
+            case Stalled:
+                if (recoveringSince == 0) {
+                    recoveringSince = SystemClock.elapsedRealtime();
+                    handler.removeCallbacks(watchdog);
+                    handler.postDelayed(watchdog, stallThresholdMs);
+                }
+                break;
+
+            case Idle:
+            case Stopped:
+                // expected while a reconnect is under way
+                if (recoveringSince == 0) {
+                    recoveringSince = SystemClock.elapsedRealtime();
+                    scheduleReconnect();
+                }
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    public synchronized void error() {
+        if (!enabled || !active) {
+            return;
+        }
+
+        if (recoveringSince == 0) {
+            recoveringSince = SystemClock.elapsedRealtime();
+        }
+        scheduleReconnect();
+    }
+
+    public synchronized boolean isRecovering() {
+        return active && recoveringSince != 0;
+    }
+
+    public synchronized WritableMap getStats() {
+        WritableMap map = Arguments.createMap();
+        map.putBoolean("enabled", enabled);
+        map.putBoolean("recovering", recoveringSince != 0);
+        map.putInt("attempt", attempts);
+        map.putDouble("reconnects", reconnects);
+        map.putDouble("recoveries", recoveries);
+        map.putDouble("failures", failures);
+        map.putDouble("recoveryMs", totalRecoveryMs
+                + ((recoveringSince != 0) ? SystemClock.elapsedRealtime() - recoveringSince : 0));
+        map.putDouble("longestRecoveryMs", longestRecoveryMs);
+        return map;
+    }
+
+    private synchronized void scheduleReconnect() {
+        if (!active) {
+            return;
+        }
+
+        cancelTimers();
+
+        if (attempts >= maxAttempts) {
+            int gaveUpAfter = attempts;
+
+            failures++;
+            totalRecoveryMs += SystemClock.elapsedRealtime() - recoveringSince;
+            active = false;
+            recoveringSince = 0;
+            attempts = 0;
+
+            listener.gaveUp(gaveUpAfter);
+            return;
+        }
+
+        // exponential backoff, with half of each delay randomized
+        long delay = Math.min(maxDelayMs, baseDelayMs << Math.min(attempts, 30));
+        delay = delay / 2 + (long) (random.nextDouble() * (delay / 2));
+        attempts++;
+
+        handler.postDelayed(reconnect, delay);
+        listener.reconnectScheduled(attempts, delay);
+    }
+
+    private void cancel() {
+        cancelTimers();
+        if (recoveringSince != 0) {
+            totalRecoveryMs += SystemClock.elapsedRealtime() - recoveringSince;
+        }
+        recoveringSince = 0;
+        attempts = 0;
+    }
+
+    private void cancelTimers() {
+        handler.removeCallbacks(watchdog);
+        handler.removeCallbacks(reconnect);
+    }
+
+}
@@ -0,0 +1,191 @@
+package fm.feed.android.react;
+
+import android.util.SparseArray;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableMapKeySetIterator;
+import com.facebook.react.bridge.WritableArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import fm.feed.android.playersdk.models.Station;
+
+/**
+ * Station lookups by id and by option value. The index is rebuilt whenever
+ * the player hands us a new station list, and is swapped in whole so readers
+ * on other threads never see a partially built index.
+ */
+class StationIndex {
+
+    private static final class Index {
+        final SparseArray<Station> byId;
+        // option key -> option value -> ids of stations with that value, in station list order
+        final Map<String, Map<String, List<Integer>>> byOption;
+
+        Index(SparseArray<Station> byId, Map<String, Map<String, List<Integer>>> byOption) {
+            this.byId = byId;
+            this.byOption = byOption;
+        }
+    }
+
+    private volatile Index index = new Index(new SparseArray<Station>(),
+            Collections.<String, Map<String, List<Integer>>>emptyMap());
+
+    public void rebuild(List<Station> stations) {
+        SparseArray<Station> byId = new SparseArray<>(stations.size());
+        Map<String, Map<String, List<Integer>>> byOption = new HashMap<>();
+
+        for (Station station : stations) {
+            int id = station.getId();
+            byId.put(id, station);
+
+            for (Map.Entry<String, String> option : optionsOf(station).entrySet()) {
+                Map<String, List<Integer>> values = byOption.get(option.getKey());
+                if (values == null) {
+                    values = new HashMap<>();
+                    byOption.put(option.getKey(), values);
+                }
+
+                List<Integer> ids = values.get(option.getValue());
+                if (ids == null) {
+                    ids = new ArrayList<>();
+                    values.put(option.getValue(), ids);
+                }
+                ids.add(id);
+            }
+        }
+
+        index = new Index(byId, byOption);
+    }
+
+    public void clear() {
+        index = new Index(new SparseArray<Station>(),
+                Collections.<String, Map<String, List<Integer>>>emptyMap());
+    }
+
+    /**
+     * Return the station with the given id, or null.
+     */
+    public Station get(int id) {
+        return index.byId.get(id);
+    }
+
+    /**
+     * Return the ids of stations whose options match every key/value pair in the
+     * filter. Values are compared as strings.
+     */
+    public WritableArray findIds(ReadableMap filter) {
+        Index current = index;
+        List<Integer> matches = null;
+
+        ReadableMapKeySetIterator iterator = filter.keySetIterator();
+        while (iterator.hasNextKey()) {
+            String key = iterator.nextKey();
+            String value = filterValue(filter, key);
+
+            Map<String, List<Integer>> values = current.byOption.get(key);
+            List<Integer> ids = (values == null || value == null) ? null : values.get(value);
+            if (ids == null) {
+                matches = Collections.emptyList();
+                break;
+            }
+
+            if (matches == null) {
+                matches = new ArrayList<>(ids);
+            } else {
+                matches.retainAll(ids);
+            }
+        }
+
+        WritableArray array = Arguments.createArray();
+        if (matches == null) {
+            // empty filter matches everything
+            for (int i = 0; i < current.byId.size(); i++) {
+                array.pushInt(current.byId.keyAt(i));
+            }
+        } else {
+            for (Integer id : matches) {
+                array.pushInt(id);
+            }
+        }
+        return array;
+    }
+
+    private static String filterValue(ReadableMap filter, String key) {
+        switch (filter.getType(key)) {
+            case String:
+                return filter.getString(key);
+            case Boolean:
+                return String.valueOf(filter.getBoolean(key));
+            case Number:
+                double d = filter.getDouble(key);
+                if (d == Math.rint(d) && !Double.isInfinite(d)) {
+                    return String.valueOf((long) d);
+                }
+                return String.valueOf(d);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Flatten the station's 'option_values' (an object of key/value pairs, or
+     * an array of such objects) into string values. The field is read through
+     * ModelSerializer's per-class field list, so no copy of the station is built.
+     */
+    private static Map<String, String> optionsOf(Station station) {
+        Map<String, String> options = new HashMap<>();
+
+        Object values = ModelSerializer.fieldValue(station, "option_values");
+        if (values == null) {
+            return options;
+        }
+
+        if (values instanceof JsonObject || values instanceof Map) {
+            addOptions(values, options);
+        } else if (values instanceof Iterable) {
+            for (Object element : (Iterable<?>) values) {
+                addOptions(element, options);
+            }
+        } else if (values.getClass().isArray()) {
+            int length = Array.getLength(values);
+            for (int i = 0; i < length; i++) {
+                addOptions(Array.get(values, i), options);
+            }
+        }
+
+        return options;
+    }
+
+    private static void addOptions(Object object, Map<String, String> options) {
+        if (object instanceof JsonObject) {
+            for (Map.Entry<String, JsonElement> entry : ((JsonObject) object).entrySet()) {
+                putOption(options, entry.getKey(), entry.getValue());
+            }
+        } else if (object instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) object).entrySet()) {
+                putOption(options, String.valueOf(entry.getKey()), entry.getValue());
+            }
+        }
+    }
+
+    private static void putOption(Map<String, String> options, String key, Object value) {
+        if (value instanceof JsonPrimitive) {
+            options.put(key, ((JsonPrimitive) value).getAsString());
+        } else if (value instanceof String || value instanceof Number || value instanceof Boolean
+                || value instanceof Character) {
+            // the same strings Gson's primitives give back
+            options.put(key, value.toString());
+        }
+    }
+
+}
@@ -0,0 +1,166 @@
+package fm.feed.android.react;
+
+import android.util.Log;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import fm.feed.android.playersdk.models.Station;
+
+/**
+ * Remembers the station list last sent to javascript (station id -> content hash)
+ * so that later updates can be sent as a diff of added, changed and removed
+ * stations rather than the full list.
+ */
+class StationSnapshot {
+
+    public final static String TAG = StationSnapshot.class.getName();
+
+    public interface StationConverter {
+        WritableMap convert(Station station) throws Exception;
+    }
+
+    private final StationConverter converter;
+    private Map<Integer, Integer> hashes = new HashMap<>();
+    private List<Integer> order = new ArrayList<>();
+    private boolean sent = false;
+
+    public StationSnapshot(StationConverter converter) {
+        this.converter = converter;
+    }
+
+    public synchronized boolean hasBeenSent() {
+        return sent;
+    }
+
+    public synchronized void reset() {
+        hashes = new HashMap<>();
+        order = new ArrayList<>();
+        sent = false;
+    }
+
+    /**
+     * Treat the given stations (id -> content hash, in order) as already sent,
+     * so that the next update is sent as a diff against them.
+     */
+    public synchronized void seed(List<Integer> order, Map<Integer, Integer> hashes) {
+        this.hashes = new HashMap<>(hashes);
+        this.order = new ArrayList<>(order);
+        sent = true;
+    }
+
+    public synchronized List<Integer> getOrder() {
+        return new ArrayList<>(order);
+    }
+
+    public synchronized Map<Integer, Integer> getHashes() {
+        return new HashMap<>(hashes);
+    }
+
+    /**
+     * Serialize every station and record them as the current snapshot.
+     */
+    public synchronized WritableArray full(List<Station> stations) {
+        Map<Integer, Integer> newHashes = new HashMap<>();
+        List<Integer> newOrder = new ArrayList<>();
+        WritableArray array = Arguments.createArray();
+
+        for (Station station : stations) {
+            try {
+                array.pushMap(converter.convert(station));
+                newHashes.put(station.getId(), hashOf(station));
+                newOrder.add(station.getId());
+            } catch (Exception e) {
+                Log.e(TAG, "Unable to serialize station " + station.getId(), e);
+            }
+        }
+
+        hashes = newHashes;
+        order = newOrder;
+        sent = true;
+
+        return array;
+    }
+
+    /**
+     * Compare the given stations with the snapshot, record them as the new
+     * snapshot, and return a map with the structure:
+     *
+     * {
+     *   added: [ { station }, ... ],
+     *   changed: [ { station }, ... ],
+     *   removed: [ id, ... ],
+     *   order: [ id, ... ]    // only present when the station order changed
+     * }
+     *
+     * Only added and changed stations are serialized.
+     */
+    public synchronized WritableMap diff(List<Station> stations) {
+        Map<Integer, Integer> newHashes = new HashMap<>();
+        List<Integer> newOrder = new ArrayList<>();
+        WritableArray added = Arguments.createArray();
+        WritableArray changed = Arguments.createArray();
+        WritableArray removed = Arguments.createArray();
+
+        for (Station station : stations) {
+            int id = station.getId();
+            int hash = hashOf(station);
+            Integer previous = hashes.get(id);
+
+            if ((previous != null) && (previous == hash)) {
+                newHashes.put(id, hash);
+                newOrder.add(id);
+                continue;
+            }
+
+            try {
+                WritableMap map = converter.convert(station);
+                if (previous == null) {
+                    added.pushMap(map);
+                } else {
+                    changed.pushMap(map);
+                }
+                newHashes.put(id, hash);
+                newOrder.add(id);
+            } catch (Exception e) {
+                Log.e(TAG, "Unable to serialize station " + id, e);
+            }
+        }
+
+        for (Integer id : order) {
+            if (!newHashes.containsKey(id)) {
+                removed.pushInt(id);
+            }
+        }
+
+        WritableMap params = Arguments.createMap();
+        params.putArray("added", added);
+        params.putArray("changed", changed);
+        params.putArray("removed", removed);
+
+        if (!newOrder.equals(order)) {
+            WritableArray ids = Arguments.createArray();
+            for (Integer id : newOrder) {
+                ids.pushInt(id);
+            }
+            params.putArray("order", ids);
+        }
+
+        hashes = newHashes;
+        order = newOrder;
+        sent = true;
+
+        return params;
+    }
+
+    private static int hashOf(Station station) {
+        return 31 * ModelSerializer.contentHash(station) + (station.hasNewMusic() ? 1 : 0);
+    }
+
+}
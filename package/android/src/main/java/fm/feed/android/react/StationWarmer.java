@@ -0,0 +1,242 @@
+package fm.feed.android.react;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import fm.feed.android.playersdk.FeedFMError;
+import fm.feed.android.playersdk.MusicQueuedListener;
+import fm.feed.android.playersdk.models.Station;
+
+/**
+ * Asks the player to prepare music for stations before they are selected,
+ * so that switching to one of them doesn't have to wait for its queue to fill.
+ *
+ * Stations are prepared one at a time, on the main thread, to limit network use.
+ * At most maxStations are kept warm; when more are requested the least recently
+ * requested or used ones are forgotten. A warm station is not prepared again
+ * until it has been warm for longer than the refresh interval.
+ */
+class StationWarmer {
+
+    public final static String TAG = StationWarmer.class.getName();
+
+    public static final int DEFAULT_MAX_STATIONS = 3;
+    public static final long DEFAULT_REFRESH_INTERVAL_MS = 10 * 60 * 1000;
+
+    public interface Target {
+        /**
+         * Start preparing music for the station. Returns false if that isn't possible now.
+         */
+        boolean prepare(Station station, MusicQueuedListener listener);
+    }
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Target target;
+
+    // station id -> time it finished preparing, least recently requested first
+    private final LinkedHashMap<Integer, Long> warm = new LinkedHashMap<>(16, 0.75f, true);
+    private final Deque<Station> pending = new ArrayDeque<>();
+    private Station preparing = null;
+    // bumped by clear(), so callbacks from before it are ignored
+    private int generation = 0;
+
+    private int maxStations = DEFAULT_MAX_STATIONS;
+    private long refreshIntervalMs = DEFAULT_REFRESH_INTERVAL_MS;
+
+    private long requested;
+    private long prepared;
+    private long failed;
+    private long evicted;
+    private long hits;
+    private long misses;
+
+    public StationWarmer(Target target) {
+        this.target = target;
+    }
+
+    public synchronized void configure(int maxStations, long refreshIntervalMs) {
+        this.maxStations = (maxStations >= 0) ? maxStations : DEFAULT_MAX_STATIONS;
+        this.refreshIntervalMs = (refreshIntervalMs > 0) ? refreshIntervalMs : DEFAULT_REFRESH_INTERVAL_MS;
+        trim();
+    }
+
+    /**
+     * Warm the given stations, most likely first. Stations beyond maxStations
+     * are ignored.
+     */
+    public synchronized void warm(List<Station> stations) {
+        long now = SystemClock.elapsedRealtime();
+        int count = Math.min(stations.size(), maxStations);
+
+        // touch in reverse so the most likely station ends up most recent
+        for (int i = count - 1; i >= 0; i--) {
+            Station station = stations.get(i);
+            Long warmedAt = warm.get(station.getId());
+
+            if (warmedAt != null && (warmedAt == 0 || now - warmedAt < refreshIntervalMs)) {
+                // already warm, or being prepared
+                continue;
+            }
+
+            if (isQueued(station.getId())) {
+                continue;
+            }
+
+            requested++;
+            warm.put(station.getId(), 0L);
+            pending.addFirst(station);
+        }
+
+        trim();
+        scheduleNext();
+    }
+
+    /**
+     * The given station is being made active. Returns true if it was warm.
+     */
+    public synchronized boolean used(int stationId) {
+        Long warmedAt = warm.get(stationId);
+        boolean hit = (warmedAt != null) && (warmedAt != 0);
+
+        if (hit) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return hit;
+    }
+
+    /**
+     * Forget every warm station - for when the station list changes.
+     */
+    public synchronized void clear() {
+        warm.clear();
+        pending.clear();
+        preparing = null;
+        generation++;
+    }
+
+    public synchronized WritableMap getStats() {
+        WritableMap map = Arguments.createMap();
+        WritableArray ids = Arguments.createArray();
+        for (Map.Entry<Integer, Long> entry : warm.entrySet()) {
+            if (entry.getValue() != 0) {
+                ids.pushInt(entry.getKey());
+            }
+        }
+        map.putArray("warm", ids);
+        map.putInt("pending", pending.size() + ((preparing != null) ? 1 : 0));
+        map.putInt("maxStations", maxStations);
+        map.putDouble("requested", requested);
+        map.putDouble("prepared", prepared);
+        map.putDouble("failed", failed);
+        map.putDouble("evicted", evicted);
+        map.putDouble("hits", hits);
+        map.putDouble("misses", misses);
+        return map;
+    }
+
+    private boolean isQueued(int stationId) {
+        if (preparing != null && preparing.getId() == stationId) {
+            return true;
+        }
+
+        for (Station station : pending) {
+            if (station.getId() == stationId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // forget the least recently requested stations beyond maxStations
+    private void trim() {
+        Iterator<Map.Entry<Integer, Long>> iterator = warm.entrySet().iterator();
+        while (warm.size() > maxStations && iterator.hasNext()) {
+            int stationId = iterator.next().getKey();
+            iterator.remove();
+            evicted++;
+
+            for (Iterator<Station> queued = pending.iterator(); queued.hasNext(); ) {
+                if (queued.next().getId() == stationId) {
+                    queued.remove();
+                }
+            }
+        }
+    }
+
+    private void scheduleNext() {
+        if (preparing != null || pending.isEmpty()) {
+            return;
+        }
+
+        preparing = pending.pollFirst();
+        final Station station = preparing;
+        final int startedGeneration = generation;
+
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                boolean started = target.prepare(station, new MusicQueuedListener() {
+                    @Override
+                    public void onMusicQueued() {
+                        finished(startedGeneration, station, true);
+                    }
+
+                    @Override
+                    public void onError(@NonNull FeedFMError feedFMError) {
+                        Log.w(TAG, "Unable to warm station " + station.getId() + ": " + feedFMError.getMessage());
+                        finished(startedGeneration, station, false);
+                    }
+                });
+
+                if (!started) {
+                    finished(startedGeneration, station, false);
+                }
+            }
+        });
+    }
+
+    private synchronized void finished(int startedGeneration, Station station, boolean success) {
+        if (startedGeneration != generation) {
+            return;
+        }
+
+        preparing = null;
+
+        for (Iterator<Map.Entry<Integer, Long>> iterator = warm.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<Integer, Long> entry = iterator.next();
+            if (entry.getKey() != station.getId()) {
+                continue;
+            }
+
+            // update in place, since get() or put() would count as a request
+            if (success) {
+                prepared++;
+                entry.setValue(SystemClock.elapsedRealtime());
+            } else {
+                failed++;
+                iterator.remove();
+            }
+            break;
+        }
+
+        scheduleNext();
+    }
+
+}
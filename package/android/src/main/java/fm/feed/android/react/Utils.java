@@ -1,16 +1,17 @@
 package fm.feed.android.react;
 
+import android.os.Build;
+import android.os.Looper;
+
 import androidx.annotation.Nullable;
 
+import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.ReactContext;
 import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.ReadableMapKeySetIterator;
 import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
-import com.facebook.react.bridge.WritableNativeArray;
-import com.facebook.react.bridge.WritableNativeMap;
-import com.facebook.react.modules.core.DeviceEventManagerModule;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
@@ -22,6 +23,36 @@ import java.util.Iterator;
 
 class Utils {
 
+    private static final Gson sGson = createDefaultGson();
+
+    // when true, model objects go through Gson -> String -> JSONObject -> WritableMap
+    // rather than straight through ModelSerializer
+    private static volatile boolean sLegacySerialization = false;
+
+    private static final EventBatcher sEventBatcher = new EventBatcher();
+
+    private static final WritableFactory sNativeFactory = new WritableFactory() {
+        @Override
+        public WritableMap createMap() {
+            return Arguments.createMap();
+        }
+
+        @Override
+        public WritableArray createArray() {
+            return Arguments.createArray();
+        }
+    };
+
+    private static volatile WritableFactory sWritableFactory = sNativeFactory;
+
+    /**
+     * Creates the maps and arrays that conversions write into.
+     */
+    interface WritableFactory {
+        WritableMap createMap();
+
+        WritableArray createArray();
+    }
 
     private static Gson createDefaultGson() {
         GsonBuilder builder = new GsonBuilder();
@@ -30,11 +61,48 @@ class Utils {
 
 
     public static String toJson(Object json) {
-        return createDefaultGson().toJson(json);
+        return sGson.toJson(json);
+    }
+
+    /**
+     * Replace the native maps and arrays conversions write into, e.g. with
+     * JavaOnlyMap/JavaOnlyArray when running on the JVM without the React Native
+     * libraries. Pass null to go back to the native ones.
+     */
+    static void setWritableFactory(@Nullable WritableFactory factory) {
+        sWritableFactory = (factory != null) ? factory : sNativeFactory;
+    }
+
+    static WritableMap createMap() {
+        return sWritableFactory.createMap();
+    }
+
+    static WritableArray createArray() {
+        return sWritableFactory.createArray();
+    }
+
+    public static void setLegacySerialization(boolean legacy) {
+        sLegacySerialization = legacy;
+    }
+
+    public static boolean isLegacySerialization() {
+        return sLegacySerialization;
+    }
+
+    /**
+     * Convert an SDK model object (Station, AudioFile metadata, ...) into a map that
+     * can be sent across the bridge.
+     */
+    public static WritableMap convertModelToMap(Object model) throws JSONException {
+        if (sLegacySerialization) {
+            return convertJsonToMap(new JSONObject(toJson(model)));
+        }
+
+        return ModelSerializer.toMap(model);
     }
 
     public static WritableMap convertJsonToMap(JSONObject jsonObject) throws JSONException {
-        WritableMap map = new WritableNativeMap();
+        WritableMap map = createMap();
 
         Iterator<String> iterator = jsonObject.keys();
         while (iterator.hasNext()) {
@@ -63,7 +131,7 @@ class Utils {
     }
 
     public static WritableArray convertJsonToArray(JSONArray jsonArray) throws JSONException {
-        WritableArray array = new WritableNativeArray();
+        WritableArray array = createArray();
 
         for (int i = 0; i < jsonArray.length(); i++) {
             Object value = jsonArray.get(i);
@@ -143,12 +211,38 @@ class Utils {
     }
 
 
+    /**
+     * Stop the looper once the messages already queued have run (right away
+     * before API 18, which has no quitSafely).
+     */
+    public static void quitSafely(Looper looper) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            looper.quitSafely();
+        } else {
+            looper.quit();
+        }
+    }
+
+    /**
+     * Return the name under which a module sends an event to javascript. Names are
+     * prefixed with the module name ("RNFMAudioPlayer:state-change"), so listeners
+     * for one module never receive the other module's events.
+     */
+    public static String moduleEvent(String moduleName, String eventName) {
+        return moduleName + EventBatcher.NAMESPACE_SEPARATOR + eventName;
+    }
+
     public static void sendEvent(ReactContext reactContext,
                            String eventName,
                            @Nullable WritableMap params) {
-        reactContext
-                .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
-                .emit(eventName, params);
+        sEventBatcher.send(reactContext, eventName, params);
+    }
+
+    /**
+     * Choose how events are delivered to javascript - see EventBatcher.
+     */
+    public static void setEventBatching(EventBatcher.FlushPolicy policy, long windowMs) {
+        sEventBatcher.configure(policy, windowMs);
     }
 
 
@@ -0,0 +1,285 @@
+package fm.feed.android.react;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.Locale;
+
+/**
+ * Delivers volume changes to a player on the main thread, at most once per
+ * display frame. Only the latest value set since the last frame is applied;
+ * earlier ones are counted as coalesced.
+ *
+ * The channel can also ramp the volume to a target over time (fadeTo). The ramp
+ * runs from a main thread timer, so it doesn't depend on javascript, and is
+ * cancelled by a later set() or fadeTo().
+ */
+class VolumeChannel {
+
+    public interface Target {
+        /**
+         * Apply the volume. Called on the main thread.
+         */
+        void apply(float volume);
+    }
+
+    public interface FadeListener {
+        /**
+         * The fade reached its target (completed is true) or was cancelled.
+         */
+        void finished(boolean completed, float volume);
+    }
+
+    public enum Curve {
+        LINEAR,
+        EASE_IN,
+        EASE_OUT,
+        // constant total power when fading one source up and another down
+        EQUAL_POWER;
+
+        public static Curve fromName(String name) {
+            if (name != null) {
+                try {
+                    return Curve.valueOf(name.toUpperCase(Locale.US).replace('-', '_'));
+                } catch (IllegalArgumentException e) {
+                    // fall through
+                }
+            }
+            return LINEAR;
+        }
+
+        // fraction (0..1) of the way from the start to the target volume at time t (0..1)
+        float shape(float t, boolean rising) {
+            switch (this) {
+                case EASE_IN:
+                    return t * t;
+                case EASE_OUT:
+                    return 1 - (1 - t) * (1 - t);
+                case EQUAL_POWER:
+                    return rising
+                            ? (float) Math.sin(t * Math.PI / 2)
+                            : 1 - (float) Math.cos(t * Math.PI / 2);
+                default:
+                    return t;
+            }
+        }
+    }
+
+    private static final long RAMP_STEP_MS = 16;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Target target;
+
+    // last volume applied to the target
+    private float volume = 1;
+
+    private float pending;
+    private boolean hasPending = false;
+    private boolean frameScheduled = false;
+
+    private float rampFrom;
+    private float rampTo;
+    private long rampStartedAt;
+    private long rampDurationMs;
+    private Curve rampCurve;
+    private FadeListener rampListener;
+    private boolean ramping = false;
+
+    private long requested;
+    private long applied;
+    private long coalesced;
+    private long fades;
+    private long fadesCancelled;
+
+    private final Choreographer.FrameCallback frameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            float next;
+
+            synchronized (VolumeChannel.this) {
+                frameScheduled = false;
+                if (!hasPending) {
+                    return;
+                }
+                next = pending;
+                hasPending = false;
+                volume = next;
+                applied++;
+            }
+
+            target.apply(next);
+        }
+    };
+
+    private final Runnable postFrameCallback = new Runnable() {
+        @Override
+        public void run() {
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+        }
+    };
+
+    private final Runnable rampStep = new Runnable() {
+        @Override
+        public void run() {
+            float next;
+            FadeListener finished = null;
+
+            synchronized (VolumeChannel.this) {
+                if (!ramping) {
+                    return;
+                }
+
+                long elapsed = SystemClock.uptimeMillis() - rampStartedAt;
+                float t = (rampDurationMs > 0) ? Math.min(1f, (float) elapsed / rampDurationMs) : 1f;
+                next = rampFrom + (rampTo - rampFrom) * rampCurve.shape(t, rampTo >= rampFrom);
+                volume = next;
+
+                if (t >= 1) {
+                    ramping = false;
+                    finished = rampListener;
+                    rampListener = null;
+                }
+            }
+
+            target.apply(next);
+
+            if (finished != null) {
+                finished.finished(true, next);
+            } else if (isRamping()) {
+                // a ramp started meanwhile may already have a step queued
+                mainHandler.removeCallbacks(this);
+                mainHandler.postDelayed(this, RAMP_STEP_MS);
+            }
+        }
+    };
+
+    public VolumeChannel(Target target) {
+        this.target = target;
+    }
+
+    public void set(float volume) {
+        FadeListener cancelled;
+
+        synchronized (this) {
+            cancelled = cancelRamp();
+
+            requested++;
+
+            if (hasPending) {
+                coalesced++;
+            }
+            pending = volume;
+            hasPending = true;
+
+            if (!frameScheduled) {
+                frameScheduled = true;
+                mainHandler.post(postFrameCallback);
+            }
+        }
+
+        notifyCancelled(cancelled);
+    }
+
+    /**
+     * Ramp from the current volume to the given one over durationMs.
+     */
+    public void fadeTo(float to, long durationMs, Curve curve, FadeListener listener) {
+        float from;
+        synchronized (this) {
+            from = hasPending ? pending : volume;
+        }
+        fadeTo(from, to, durationMs, curve, listener);
+    }
+
+    /**
+     * Ramp from one volume to another over durationMs. The listener is told
+     * when the ramp finishes or is cancelled.
+     */
+    public void fadeTo(float from, float to, long durationMs, Curve curve, FadeListener listener) {
+        FadeListener cancelled;
+
+        synchronized (this) {
+            cancelled = cancelRamp();
+
+            if (hasPending) {
+                // the ramp replaces any volume waiting for a frame
+                hasPending = false;
+                coalesced++;
+            }
+
+            rampFrom = from;
+            rampTo = to;
+            rampStartedAt = SystemClock.uptimeMillis();
+            rampDurationMs = Math.max(durationMs, 0);
+            rampCurve = (curve != null) ? curve : Curve.LINEAR;
+            rampListener = listener;
+            ramping = true;
+            fades++;
+        }
+
+        notifyCancelled(cancelled);
+        mainHandler.post(rampStep);
+    }
+
+    /**
+     * Drop any volume change or ramp that hasn't finished yet.
+     */
+    public void cancel() {
+        FadeListener cancelled;
+
+        synchronized (this) {
+            cancelled = cancelRamp();
+            if (hasPending) {
+                coalesced++;
+                hasPending = false;
+            }
+        }
+
+        notifyCancelled(cancelled);
+    }
+
+    public synchronized float getVolume() {
+        return volume;
+    }
+
+    public synchronized boolean isRamping() {
+        return ramping;
+    }
+
+    public synchronized WritableMap getStats() {
+        WritableMap map = Arguments.createMap();
+        map.putDouble("requested", requested);
+        map.putDouble("applied", applied);
+        map.putDouble("coalesced", coalesced);
+        map.putDouble("fades", fades);
+        map.putDouble("fadesCancelled", fadesCancelled);
+        return map;
+    }
+
+    // returns the listener of the ramp that was cancelled, if any
+    private FadeListener cancelRamp() {
+        if (!ramping) {
+            return null;
+        }
+
+        ramping = false;
+        fadesCancelled++;
+        mainHandler.removeCallbacks(rampStep);
+
+        FadeListener listener = rampListener;
+        rampListener = null;
+        return listener;
+    }
+
+    private void notifyCancelled(FadeListener listener) {
+        if (listener != null) {
+            listener.finished(false, getVolume());
+        }
+    }
+
+}
@@ -0,0 +1,154 @@
+package fm.feed.android.react;
+
+import com.facebook.react.bridge.JavaOnlyArray;
+import com.facebook.react.bridge.JavaOnlyMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.annotations.SerializedName;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Models shaped like the SDK's, at a chosen size, for ModelSerializerTest and
+ * ConversionBenchmark.
+ */
+final class ConversionFixtures {
+
+    /**
+     * Writes conversions into JavaOnlyMap/JavaOnlyArray, which work on the JVM.
+     */
+    static final Utils.WritableFactory JAVA_ONLY = new Utils.WritableFactory() {
+        @Override
+        public WritableMap createMap() {
+            return new JavaOnlyMap();
+        }
+
+        @Override
+        public WritableArray createArray() {
+            return new JavaOnlyArray();
+        }
+    };
+
+    private ConversionFixtures() {
+    }
+
+    /**
+     * The conversion Utils.convertModelToMap did before ModelSerializer.
+     */
+    static WritableMap legacyToMap(Object model) throws JSONException {
+        return Utils.convertJsonToMap(new JSONObject(Utils.toJson(model)));
+    }
+
+    /**
+     * A play's metadata, with extraFields more properties than the basic ones.
+     */
+    static JsonObject metadata(int extraFields) {
+        JsonObject metadata = new JsonObject();
+        metadata.addProperty("title", "Nightcall");
+        metadata.addProperty("artist", "Kavinsky");
+        metadata.addProperty("release", "OutRun");
+        metadata.addProperty("bpm", 92);
+        metadata.addProperty("gain", -7.25);
+        metadata.addProperty("loudness", -0.1f);
+        metadata.addProperty("explicit", false);
+
+        JsonArray genres = new JsonArray();
+        genres.add("electronic");
+        genres.add("synthwave");
+        metadata.add("genres", genres);
+
+        JsonObject artwork = new JsonObject();
+        artwork.addProperty("url", "https://example.com/artwork/1234.jpg");
+        artwork.addProperty("width", 600);
+        artwork.addProperty("height", 600);
+        metadata.add("artwork", artwork);
+
+        for (int i = 0; i < extraFields; i++) {
+            metadata.addProperty("extra_" + i, (i % 2 == 0) ? "value " + i : String.valueOf(i * 0.3f));
+        }
+        return metadata;
+    }
+
+    /**
+     * Shaped like the SDK's Station: scalar fields, a free-form map, option values and
+     * a list of nested models.
+     */
+    static class StationModel {
+
+        int id;
+        String name;
+        @SerializedName("on_demand")
+        boolean onDemand;
+        @SerializedName("pre_gain")
+        double preGain;
+        @SerializedName("crossfade_seconds")
+        float crossfadeSeconds;
+        @SerializedName("last_updated")
+        long lastUpdated;
+        Map<String, Object> properties;
+        @SerializedName("option_values")
+        List<String> optionValues;
+        List<AudioFileModel> audioFiles;
+
+        static StationModel create(int audioFileCount) {
+            StationModel station = new StationModel();
+            station.id = 4321;
+            station.name = "Workout Mix";
+            station.onDemand = true;
+            station.preGain = 1.5;
+            station.crossfadeSeconds = 0.1f;
+            station.lastUpdated = 1700000000000L;
+
+            station.properties = new LinkedHashMap<>();
+            station.properties.put("genre", "electronic");
+            station.properties.put("energy", 8);
+            station.properties.put("tags", new String[] { "cardio", null, "gym" });
+            Map<String, Object> subheader = new LinkedHashMap<>();
+            subheader.put("text", "Keep moving");
+            subheader.put("visible", true);
+            station.properties.put("subheader", subheader);
+
+            station.optionValues = new ArrayList<>();
+            station.optionValues.add("cardio");
+            station.optionValues.add("upbeat");
+
+            station.audioFiles = new ArrayList<>();
+            for (int i = 0; i < audioFileCount; i++) {
+                station.audioFiles.add(AudioFileModel.create(i));
+            }
+            return station;
+        }
+    }
+
+    static class AudioFileModel {
+
+        String id;
+        @SerializedName("duration_in_seconds")
+        float durationInSeconds;
+        @SerializedName("replay_gain")
+        float replayGain;
+        String title;
+        String artist;
+        boolean liked;
+
+        static AudioFileModel create(int index) {
+            AudioFileModel audioFile = new AudioFileModel();
+            audioFile.id = "af-" + index;
+            audioFile.durationInSeconds = 180.37f + index;
+            audioFile.replayGain = -0.1f * (index % 9 + 1);
+            audioFile.title = "Track " + index;
+            audioFile.artist = "Artist " + (index % 7);
+            audioFile.liked = (index % 3) == 0;
+            return audioFile;
+        }
+    }
+
+}
@@ -0,0 +1,594 @@
+package fm.feed.android.react;
+
+import android.os.Looper;
+
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+import com.google.gson.JsonObject;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.MockedConstruction;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import fm.feed.android.playersdk.FeedAudioPlayer;
+import fm.feed.android.playersdk.FeedSimulcastStreamer;
+import fm.feed.android.playersdk.SimulcastEventListener;
+import fm.feed.android.playersdk.SimulcastPlaybackState;
+import fm.feed.android.playersdk.State;
+import fm.feed.android.playersdk.models.Artist;
+import fm.feed.android.playersdk.models.AudioFile;
+import fm.feed.android.playersdk.models.Play;
+import fm.feed.android.playersdk.models.Release;
+import fm.feed.android.playersdk.models.Station;
+import fm.feed.android.playersdk.models.Track;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockConstruction;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Load harness for the bridge modules: a fake player sends progress, state and
+ * play callbacks to RNFMAudioPlayerModule and RNFMSimulcastStreamer at a fixed
+ * rate, on the main thread like the SDK, while other threads fire random
+ * bursts of commands. Prints the sustained callback and event throughput, the
+ * allocation rate on the callback and serializer threads, and how many events
+ * were dropped or reordered on the way to javascript.
+ *
+ * The defaults keep the run short enough for every test pass. Larger runs, or
+ * other batching policies, are chosen with gradle properties, for example
+ * -PloadHarness.eventsPerSecond=20000 -PloadHarness.durationMs=10000
+ * -PloadHarness.batching=window
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(shadows = ShadowArguments.class, instrumentedPackages = "com.facebook.react.bridge")
+public class EventLoadHarnessTest {
+
+    private static final int EVENTS_PER_SECOND = Integer.getInteger("loadHarness.eventsPerSecond", 5000);
+    private static final int DURATION_MS = Integer.getInteger("loadHarness.durationMs", 2000);
+    private static final int COMMAND_THREADS = Integer.getInteger("loadHarness.commandThreads", 4);
+    private static final String BATCHING = System.getProperty("loadHarness.batching", "immediate");
+
+    // a state change every STATE_INTERVAL ticks, and a new play every PLAY_INTERVAL
+    private static final int STATE_INTERVAL = 50;
+    private static final int PLAY_INTERVAL = 500;
+    private static final int PLAYS = 8;
+    // events stop arriving once the serializer has caught up
+    private static final long QUIET_MS = 250;
+    private static final long DRAIN_TIMEOUT_MS = 10000;
+
+    private static final String PLAYER = "RNFMAudioPlayer";
+    private static final String SIMULCAST = "RNFMSimulcastStreamer";
+
+    private static final State[] PLAYER_STATES = {
+            State.PLAYING, State.STALLED, State.PLAYING, State.PAUSED
+    };
+    private static final SimulcastPlaybackState[] SIMULCAST_STATES = {
+            SimulcastPlaybackState.Playing, SimulcastPlaybackState.Stalled
+    };
+
+    private LoadEmitter emitter;
+    private FeedAudioPlayer player;
+    private RNFMAudioPlayerModule module;
+    private RNFMSimulcastStreamer simulcast;
+    private MockedConstruction<FeedSimulcastStreamer> streamers;
+    private SimulcastEventListener simulcastListener;
+    private Play[] plays;
+
+    @Before
+    public void setUp() {
+        Utils.setEventBatching(EventBatcher.FlushPolicy.valueOf(BATCHING.toUpperCase(Locale.US)), 0);
+
+        emitter = new LoadEmitter();
+        player = mock(FeedAudioPlayer.class);
+        when(player.canSkip()).thenReturn(true);
+
+        FakeReactContext context = new FakeReactContext(emitter);
+        module = new RNFMAudioPlayerModule(context);
+        module.setFeedAudioPlayer(player);
+
+        // the streamer hands its listener to the SDK's constructor
+        streamers = mockConstruction(FeedSimulcastStreamer.class,
+                new MockedConstruction.MockInitializer<FeedSimulcastStreamer>() {
+                    @Override
+                    public void prepare(FeedSimulcastStreamer streamer, MockedConstruction.Context context) {
+                        simulcastListener = (SimulcastEventListener) context.arguments().get(2);
+                    }
+                });
+        simulcast = new RNFMSimulcastStreamer(context);
+        simulcast.initialize("simulcast-token");
+        simulcast.connect();
+
+        plays = new Play[PLAYS];
+        for (int i = 0; i < PLAYS; i++) {
+            plays[i] = play(i);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        module.onCatalystInstanceDestroy();
+        simulcast.onCatalystInstanceDestroy();
+        streamers.close();
+        Utils.setEventBatching(EventBatcher.FlushPolicy.IMMEDIATE, 0);
+    }
+
+    @Test
+    public void sustainedLoad() throws Exception {
+        List<CommandBurster> bursters = new ArrayList<>();
+        for (int i = 0; i < COMMAND_THREADS; i++) {
+            bursters.add(new CommandBurster(module, new Random(i), DURATION_MS));
+        }
+
+        AllocationCounter allocations = new AllocationCounter();
+        long startedAt = System.nanoTime();
+        for (CommandBurster burster : bursters) {
+            burster.start();
+        }
+
+        int callbacks = generate(startedAt);
+        long generatedAt = System.nanoTime();
+
+        for (CommandBurster burster : bursters) {
+            burster.join();
+        }
+        // nothing more is queued, so flush what batching still holds
+        Utils.setEventBatching(EventBatcher.FlushPolicy.IMMEDIATE, 0);
+        drain();
+        long drainedAt = emitter.lastReceivedAt;
+        long allocated = allocations.allocated();
+
+        Report report = new Report(callbacks, generatedAt - startedAt, drainedAt - startedAt, allocated);
+        report.print(emitter, bursters, commandStats());
+
+        Ledger playerEvents = emitter.ledger(PLAYER);
+        Ledger simulcastEvents = emitter.ledger(SIMULCAST);
+        assertEquals(0, playerEvents.reordered);
+        assertEquals(0, simulcastEvents.reordered);
+        assertEquals(0, playerEvents.unexpected);
+        assertEquals(0, simulcastEvents.unexpected);
+        if ("immediate".equalsIgnoreCase(BATCHING)) {
+            // without batching nothing is coalesced, so every event must arrive
+            assertEquals(0, playerEvents.dropped());
+            assertEquals(0, simulcastEvents.dropped());
+        }
+
+        for (CommandBurster burster : bursters) {
+            assertEquals(0, burster.progressWentBack);
+        }
+        assertEquals(0, report.lostCommands(bursters, commandStats()));
+    }
+
+    // sends callbacks at EVENTS_PER_SECOND until DURATION_MS has passed, running the
+    // commands the bursters queue in between; returns the number of callbacks sent
+    private int generate(long startedAt) {
+        long durationNanos = DURATION_MS * 1000000L;
+        int callbacks = 0;
+        int tick = 0;
+        Play play = null;
+
+        while (true) {
+            long elapsedNanos = System.nanoTime() - startedAt;
+            if (elapsedNanos >= durationNanos) {
+                break;
+            }
+
+            long due = elapsedNanos * EVENTS_PER_SECOND / 1000000000L;
+            while (callbacks < due) {
+                if (tick % PLAY_INTERVAL == 0) {
+                    play = plays[(tick / PLAY_INTERVAL) % PLAYS];
+                    playStarted(play);
+                    callbacks += 2;
+                }
+                if (tick % STATE_INTERVAL == 0) {
+                    stateChanged(tick / STATE_INTERVAL);
+                    callbacks += 2;
+                }
+
+                // elapsed stands in for a sequence number, so each one is unique
+                progress(play, tick);
+                callbacks += 2;
+                tick++;
+            }
+
+            shadowOf(Looper.getMainLooper()).idle();
+        }
+
+        return callbacks;
+    }
+
+    private void playStarted(Play play) {
+        emitter.ledger(PLAYER).emitted("play-started " + play.getAudioFile().getId());
+        module.onPlayStarted(play);
+        emitter.ledger(SIMULCAST).emitted("play-started " + play.getAudioFile().getTrack().getTitle());
+        simulcastListener.onPlayItemBeganPlayback(play);
+    }
+
+    private void stateChanged(int change) {
+        State state = PLAYER_STATES[change % PLAYER_STATES.length];
+        emitter.ledger(PLAYER).emitted("state-change " + state.ordinal());
+        module.onStateChanged(state);
+
+        SimulcastPlaybackState simulcastState = SIMULCAST_STATES[change % SIMULCAST_STATES.length];
+        emitter.ledger(SIMULCAST).emitted("state-change " + simulcastState.ordinal());
+        simulcastListener.onPlayerStateChanged(simulcastState);
+    }
+
+    private void progress(Play play, float elapsed) {
+        emitter.ledger(PLAYER).emitted("elapse " + (double) elapsed);
+        module.onProgressUpdate(play, elapsed, 258f);
+        emitter.ledger(SIMULCAST).emitted("elapse " + (double) elapsed);
+        simulcastListener.onProgressUpdate(play, elapsed, 258f);
+    }
+
+    // waits for the serializer to deliver everything the callbacks queued
+    private void drain() throws InterruptedException {
+        long giveUpAt = System.currentTimeMillis() + DRAIN_TIMEOUT_MS;
+        int received = -1;
+
+        while (System.currentTimeMillis() < giveUpAt) {
+            shadowOf(Looper.getMainLooper()).idle();
+            if (emitter.received.get() == received) {
+                return;
+            }
+
+            received = emitter.received.get();
+            Thread.sleep(QUIET_MS);
+        }
+    }
+
+    private ReadableMap commandStats() {
+        Promise promise = mock(Promise.class);
+        module.getCommandQueueStats(promise);
+
+        ArgumentCaptor<Object> stats = ArgumentCaptor.forClass(Object.class);
+        verify(promise).resolve(stats.capture());
+        return (ReadableMap) stats.getValue();
+    }
+
+    private static Play play(int index) {
+        Track track = mock(Track.class);
+        when(track.getTitle()).thenReturn("Track " + index);
+        Artist artist = mock(Artist.class);
+        when(artist.getName()).thenReturn("Artist " + index);
+        Release release = mock(Release.class);
+        when(release.getTitle()).thenReturn("Release " + index);
+
+        JsonObject metadata = new JsonObject();
+        metadata.addProperty("genre", "synthwave");
+
+        AudioFile audioFile = mock(AudioFile.class);
+        when(audioFile.getId()).thenReturn("af-" + index);
+        when(audioFile.getTrack()).thenReturn(track);
+        when(audioFile.getArtist()).thenReturn(artist);
+        when(audioFile.getRelease()).thenReturn(release);
+        when(audioFile.getDurationInSeconds()).thenReturn(258f);
+        doReturn(metadata).when(audioFile).getMetadata();
+
+        Station station = mock(Station.class);
+        when(station.getId()).thenReturn(7);
+
+        Play play = mock(Play.class);
+        when(play.getAudioFile()).thenReturn(audioFile);
+        when(play.getStation()).thenReturn(station);
+        return play;
+    }
+
+    /**
+     * Matches the events one module sent against the events javascript
+     * received. An event counts as reordered when it arrives after one that
+     * was sent later, and as dropped when it never arrives.
+     */
+    private static final class Ledger {
+
+        // for each event, the positions it was sent at that haven't arrived yet
+        private final Map<String, TreeSet<Integer>> unmatched = new HashMap<>();
+        private int sent;
+        private int lastPosition = -1;
+        int received;
+        int reordered;
+        // received without having been sent, or received twice
+        int unexpected;
+
+        synchronized void emitted(String key) {
+            TreeSet<Integer> positions = unmatched.get(key);
+            if (positions == null) {
+                positions = new TreeSet<>();
+                unmatched.put(key, positions);
+            }
+            positions.add(sent++);
+        }
+
+        synchronized void received(String key) {
+            received++;
+            TreeSet<Integer> positions = unmatched.get(key);
+            if (positions == null || positions.isEmpty()) {
+                unexpected++;
+                return;
+            }
+
+            // the same event can be sent more than once (a state, for example),
+            // so take the earliest copy that keeps the order if there is one
+            Integer position = positions.ceiling(lastPosition + 1);
+            if (position == null) {
+                position = positions.first();
+                reordered++;
+            }
+            positions.remove(position);
+            lastPosition = Math.max(lastPosition, position);
+        }
+
+        synchronized int sent() {
+            return sent;
+        }
+
+        synchronized int dropped() {
+            int dropped = 0;
+            for (TreeSet<Integer> positions : unmatched.values()) {
+                dropped += positions.size();
+            }
+            return dropped;
+        }
+    }
+
+    private static final class LoadEmitter implements DeviceEventManagerModule.RCTDeviceEventEmitter {
+
+        private final Map<String, Ledger> ledgers = new HashMap<>();
+        final AtomicInteger received = new AtomicInteger();
+        volatile long lastReceivedAt;
+
+        LoadEmitter() {
+            ledgers.put(PLAYER, new Ledger());
+            ledgers.put(SIMULCAST, new Ledger());
+        }
+
+        Ledger ledger(String module) {
+            return ledgers.get(module);
+        }
+
+        @Override
+        public void emit(String eventName, Object data) {
+            received.incrementAndGet();
+            lastReceivedAt = System.nanoTime();
+
+            String namespace = eventName.substring(0, eventName.indexOf(EventBatcher.NAMESPACE_SEPARATOR));
+            String baseName = eventName.substring(namespace.length() + 1);
+            ReadableMap params = (ReadableMap) data;
+
+            if (!baseName.equals(EventBatcher.BATCH_EVENT)) {
+                record(namespace, baseName, params);
+                return;
+            }
+
+            ReadableArray events = params.getArray("events");
+            for (int i = 0; i < events.size(); i++) {
+                ReadableMap event = events.getMap(i);
+                record(namespace, event.getString("name"),
+                        event.hasKey("params") ? event.getMap("params") : null);
+            }
+        }
+
+        private void record(String namespace, String baseName, ReadableMap params) {
+            String key = key(baseName, params);
+            Ledger ledger = ledgers.get(namespace);
+            if (key != null && ledger != null) {
+                ledger.received(key);
+            }
+        }
+
+        // the events the fake player causes, named as they were sent; null for others
+        private static String key(String baseName, ReadableMap params) {
+            switch (baseName) {
+                case "elapse":
+                    return "elapse " + params.getDouble("elapsed");
+                case "state-change":
+                    return "state-change " + params.getInt("state");
+                case "play-started":
+                    // the simulcast streamer sends no id
+                    ReadableMap play = params.getMap("play");
+                    return "play-started " + (play.hasKey("id") ? play.getString("id") : play.getString("title"));
+                default:
+                    return null;
+            }
+        }
+    }
+
+    /**
+     * Fires bursts of 1 to 16 commands, with up to 10ms between bursts, and
+     * checks that readProgress() never goes back to an older snapshot.
+     */
+    private static final class CommandBurster extends Thread {
+
+        private static final PlayerCommandQueue.Type[] COMMANDS = {
+                PlayerCommandQueue.Type.PLAY, PlayerCommandQueue.Type.PAUSE,
+                PlayerCommandQueue.Type.SKIP, PlayerCommandQueue.Type.SEEK
+        };
+
+        private final RNFMAudioPlayerModule module;
+        private final Random random;
+        private final long durationMs;
+        final AtomicLongArray issued = new AtomicLongArray(PlayerCommandQueue.Type.values().length);
+        volatile long progressReads;
+        volatile long progressWentBack;
+
+        CommandBurster(RNFMAudioPlayerModule module, Random random, long durationMs) {
+            super("RNFMCommandBurster");
+            this.module = module;
+            this.random = random;
+            this.durationMs = durationMs;
+        }
+
+        @Override
+        public void run() {
+            long stopAt = System.currentTimeMillis() + durationMs;
+            double lastSequence = -1;
+
+            try {
+                while (System.currentTimeMillis() < stopAt) {
+                    Thread.sleep(random.nextInt(11));
+
+                    int burst = 1 + random.nextInt(16);
+                    for (int i = 0; i < burst; i++) {
+                        PlayerCommandQueue.Type type = COMMANDS[random.nextInt(COMMANDS.length)];
+                        issue(type);
+                        issued.incrementAndGet(type.ordinal());
+                    }
+
+                    double sequence = module.readProgress().getDouble("sequence");
+                    progressReads++;
+                    if (sequence < lastSequence) {
+                        progressWentBack++;
+                    }
+                    lastSequence = sequence;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void issue(PlayerCommandQueue.Type type) {
+            switch (type) {
+                case PLAY:
+                    module.play();
+                    break;
+                case PAUSE:
+                    module.pause();
+                    break;
+                case SKIP:
+                    module.skip();
+                    break;
+                default:
+                    module.seekCurrentStationBy(random.nextBoolean() ? 5 : -5);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Bytes allocated by the main (callback) thread and the module's serializer
+     * thread, which together carry every event.
+     */
+    private static final class AllocationCounter {
+
+        private final com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        private final long mainAtStart = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        private final Thread serializer = findThread("RNFMAudioPlayerEvents");
+        private final long serializerAtStart = (serializer != null) ? threads.getThreadAllocatedBytes(serializer.getId()) : 0;
+
+        long allocated() {
+            long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - mainAtStart;
+
+            // the serializer thread may only have started during the run
+            Thread current = findThread("RNFMAudioPlayerEvents");
+            if (current != null) {
+                allocated += threads.getThreadAllocatedBytes(current.getId())
+                        - ((current == serializer) ? serializerAtStart : 0);
+            }
+            return allocated;
+        }
+
+        private static Thread findThread(String name) {
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (name.equals(thread.getName())) {
+                    return thread;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class Report {
+
+        private final int callbacks;
+        private final long generateNanos;
+        private final long deliverNanos;
+        private final long allocated;
+
+        Report(int callbacks, long generateNanos, long deliverNanos, long allocated) {
+            this.callbacks = callbacks;
+            this.generateNanos = generateNanos;
+            this.deliverNanos = deliverNanos;
+            this.allocated = allocated;
+        }
+
+        void print(LoadEmitter emitter, List<CommandBurster> bursters, ReadableMap stats) {
+            double generateSeconds = generateNanos / 1e9;
+            double deliverSeconds = deliverNanos / 1e9;
+
+            System.out.println(String.format(Locale.US,
+                    "event load (%s batching): %d callbacks in %.2fs (%.0f/s, asked for %d/s)",
+                    BATCHING, callbacks, generateSeconds, callbacks / generateSeconds, EVENTS_PER_SECOND));
+            System.out.println(String.format(Locale.US,
+                    "  %d javascript events delivered in %.2fs (%.0f/s)",
+                    emitter.received.get(), deliverSeconds, emitter.received.get() / deliverSeconds));
+            System.out.println(String.format(Locale.US,
+                    "  allocated %.1f MB/s, %d bytes per callback (callback and serializer threads)",
+                    allocated / deliverSeconds / (1024 * 1024), allocated / Math.max(1, callbacks)));
+
+            for (String module : new String[]{PLAYER, SIMULCAST}) {
+                Ledger ledger = emitter.ledger(module);
+                System.out.println(String.format(Locale.US,
+                        "  %s: %d sent, %d received, %d dropped or coalesced, %d reordered, %d unexpected",
+                        module, ledger.sent(), ledger.received, ledger.dropped(), ledger.reordered,
+                        ledger.unexpected));
+            }
+
+            long reads = 0;
+            for (CommandBurster burster : bursters) {
+                reads += burster.progressReads;
+            }
+            for (PlayerCommandQueue.Type type : CommandBurster.COMMANDS) {
+                ReadableMap entry = stats.getMap(type.name().toLowerCase(Locale.US));
+                System.out.println(String.format(Locale.US,
+                        "  %s: %d issued, %d executed, %d coalesced, %d dropped, max wait %dms",
+                        type.name().toLowerCase(Locale.US), issued(bursters, type),
+                        (long) entry.getDouble("executed"), (long) entry.getDouble("coalesced"),
+                        (long) entry.getDouble("dropped"), (long) entry.getDouble("maxWaitMs")));
+            }
+            System.out.println(String.format(Locale.US, "  %d readProgress calls", reads));
+        }
+
+        // commands that were issued but neither executed, collapsed nor dropped
+        // (including any still waiting, since the queue was drained)
+        long lostCommands(List<CommandBurster> bursters, ReadableMap stats) {
+            long lost = 0;
+            for (PlayerCommandQueue.Type type : CommandBurster.COMMANDS) {
+                ReadableMap entry = stats.getMap(type.name().toLowerCase(Locale.US));
+                lost += issued(bursters, type) - (long) entry.getDouble("executed")
+                        - (long) entry.getDouble("coalesced") - (long) entry.getDouble("dropped");
+            }
+            return lost;
+        }
+
+        private static long issued(List<CommandBurster> bursters, PlayerCommandQueue.Type type) {
+            long issued = 0;
+            for (CommandBurster burster : bursters) {
+                issued += burster.issued.get(type.ordinal());
+            }
+            return issued;
+        }
+    }
+
+}
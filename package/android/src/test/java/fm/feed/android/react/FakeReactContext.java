@@ -0,0 +1,28 @@
+package fm.feed.android.react;
+
+import com.facebook.react.bridge.JavaScriptModule;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+
+import org.robolectric.RuntimeEnvironment;
+
+/**
+ * A react context without a javascript side, which hands every event the
+ * modules send to the given emitter.
+ */
+class FakeReactContext extends ReactApplicationContext {
+
+    private final DeviceEventManagerModule.RCTDeviceEventEmitter emitter;
+
+    FakeReactContext(DeviceEventManagerModule.RCTDeviceEventEmitter emitter) {
+        super(RuntimeEnvironment.getApplication());
+        this.emitter = emitter;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends JavaScriptModule> T getJSModule(Class<T> jsInterface) {
+        return (T) emitter;
+    }
+
+}
@@ -0,0 +1,60 @@
+package fm.feed.android.react;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * ModelSerializer must produce the same maps as the Gson -> JSONObject path it
+ * replaced, at every payload size ConversionBenchmark measures.
+ */
+public class ModelSerializerTest {
+
+    private static final int[] SIZES = { 0, 1, 10, 100 };
+
+    @Before
+    public void setUp() {
+        Utils.setWritableFactory(ConversionFixtures.JAVA_ONLY);
+    }
+
+    @After
+    public void tearDown() {
+        Utils.setWritableFactory(null);
+    }
+
+    @Test
+    public void stationMatchesLegacyConversion() throws Exception {
+        for (int size : SIZES) {
+            ConversionFixtures.StationModel station = ConversionFixtures.StationModel.create(size);
+
+            assertEquals("station with " + size + " audio files",
+                    ConversionFixtures.legacyToMap(station), ModelSerializer.toMap(station));
+        }
+    }
+
+    @Test
+    public void metadataMatchesLegacyConversion() throws Exception {
+        for (int size : SIZES) {
+            assertEquals("metadata with " + size + " extra fields",
+                    ConversionFixtures.legacyToMap(ConversionFixtures.metadata(size)),
+                    ModelSerializer.toMap(ConversionFixtures.metadata(size)));
+        }
+    }
+
+    @Test
+    public void floatsAreSentAsWritten() throws Exception {
+        ConversionFixtures.StationModel station = ConversionFixtures.StationModel.create(0);
+
+        assertEquals(0.1, ModelSerializer.toMap(station).getDouble("crossfade_seconds"), 0);
+    }
+
+    @Test
+    public void nullArrayElementsAreSentAsStrings() throws Exception {
+        ConversionFixtures.StationModel station = ConversionFixtures.StationModel.create(0);
+
+        assertEquals("null", ModelSerializer.toMap(station).getMap("properties").getArray("tags").getString(1));
+    }
+
+}
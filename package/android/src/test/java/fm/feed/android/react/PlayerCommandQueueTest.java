@@ -0,0 +1,130 @@
+package fm.feed.android.react;
+
+import android.os.Looper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import fm.feed.android.playersdk.State;
+
+import static org.junit.Assert.assertEquals;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Runs the queue against a recording target on the main looper, reporting
+ * player states by hand.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class PlayerCommandQueueTest {
+
+    private RecordingTarget target;
+    private PlayerCommandQueue queue;
+
+    @Before
+    public void setUp() {
+        target = new RecordingTarget();
+        queue = new PlayerCommandQueue(target);
+    }
+
+    @Test
+    public void playAfterPauseRunsBeforeThePauseIsReported() {
+        queue.setState(State.PLAYING);
+
+        queue.pause();
+        drain();
+        queue.play();
+        drain();
+
+        assertEquals(Arrays.asList(PlayerCommandQueue.Type.PAUSE, PlayerCommandQueue.Type.PLAY), target.executed);
+        assertEquals(0, target.discarded.size());
+    }
+
+    @Test
+    public void playAfterStopInTheSameDrainRuns() {
+        queue.setState(State.PLAYING);
+
+        queue.stop();
+        queue.play();
+        drain();
+
+        assertEquals(Arrays.asList(PlayerCommandQueue.Type.STOP, PlayerCommandQueue.Type.PLAY), target.executed);
+    }
+
+    @Test
+    public void playAfterPauseAndSeekInTheSameDrainRuns() {
+        queue.setState(State.PLAYING);
+
+        queue.pause();
+        queue.seek(10);
+        queue.play();
+        drain();
+
+        assertEquals(Arrays.asList(PlayerCommandQueue.Type.PAUSE, PlayerCommandQueue.Type.SEEK,
+                PlayerCommandQueue.Type.PLAY), target.executed);
+    }
+
+    @Test
+    public void staleReportDoesNotConfirmACommand() {
+        queue.setState(State.PLAYING);
+
+        queue.pause();
+        drain();
+        // reported before the pause took effect
+        queue.setState(State.PLAYING);
+        queue.play();
+        drain();
+
+        assertEquals(Arrays.asList(PlayerCommandQueue.Type.PAUSE, PlayerCommandQueue.Type.PLAY), target.executed);
+    }
+
+    @Test
+    public void playIsDroppedOnceThePlayerIsKnownToBePlaying() {
+        queue.setState(State.PLAYING);
+        queue.play();
+        drain();
+
+        assertEquals(0, target.executed.size());
+        assertEquals(Arrays.asList(PlayerCommandQueue.Type.PLAY), target.discarded);
+    }
+
+    @Test
+    public void pauseIsDroppedOnceThePauseIsConfirmed() {
+        queue.setState(State.PLAYING);
+
+        queue.pause();
+        drain();
+        queue.setState(State.PAUSED);
+        queue.pause();
+        drain();
+
+        assertEquals(Arrays.asList(PlayerCommandQueue.Type.PAUSE), target.executed);
+        assertEquals(Arrays.asList(PlayerCommandQueue.Type.PAUSE), target.discarded);
+    }
+
+    private static void drain() {
+        shadowOf(Looper.getMainLooper()).idle();
+    }
+
+    private static final class RecordingTarget implements PlayerCommandQueue.Target {
+
+        final List<PlayerCommandQueue.Type> executed = new ArrayList<>();
+        final List<PlayerCommandQueue.Type> discarded = new ArrayList<>();
+
+        @Override
+        public void execute(PlayerCommandQueue.Command command) {
+            executed.add(command.type);
+        }
+
+        @Override
+        public void discarded(PlayerCommandQueue.Command command) {
+            discarded.add(command.type);
+        }
+    }
+
+}
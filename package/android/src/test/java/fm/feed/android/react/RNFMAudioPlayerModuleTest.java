@@ -0,0 +1,212 @@
+package fm.feed.android.react;
+
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+import com.google.gson.JsonObject;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import fm.feed.android.playersdk.FeedAudioPlayer;
+import fm.feed.android.playersdk.State;
+import fm.feed.android.playersdk.models.Artist;
+import fm.feed.android.playersdk.models.AudioFile;
+import fm.feed.android.playersdk.models.Play;
+import fm.feed.android.playersdk.models.Release;
+import fm.feed.android.playersdk.models.Station;
+import fm.feed.android.playersdk.models.Track;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Drives the module's SDK listener callbacks with a fake player, and checks
+ * the events that reach javascript.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(shadows = ShadowArguments.class, instrumentedPackages = "com.facebook.react.bridge")
+public class RNFMAudioPlayerModuleTest {
+
+    // events are sent from the module's serializer thread
+    private static final long EVENT_TIMEOUT_MS = 2000;
+
+    private RecordingEmitter emitter;
+    private FeedAudioPlayer player;
+    private RNFMAudioPlayerModule module;
+
+    @Before
+    public void setUp() {
+        emitter = new RecordingEmitter();
+        player = mock(FeedAudioPlayer.class);
+        when(player.canSkip()).thenReturn(true);
+
+        module = new RNFMAudioPlayerModule(new FakeReactContext(emitter));
+        module.setFeedAudioPlayer(player);
+    }
+
+    @After
+    public void tearDown() {
+        // stops the module's threads
+        module.onCatalystInstanceDestroy();
+    }
+
+    @Test
+    public void stateChangeIsSent() throws Exception {
+        module.onStateChanged(State.PLAYING);
+
+        Event event = emitter.next();
+        assertEquals("RNFMAudioPlayer:state-change", event.name);
+        assertEquals(State.PLAYING.ordinal(), event.params.getInt("state"));
+        assertNull(emitter.poll());
+    }
+
+    @Test
+    public void progressIsSentAsElapse() throws Exception {
+        module.onProgressUpdate(play("af-1", 7), 12.5f, 180f);
+
+        Event event = emitter.next();
+        assertEquals("RNFMAudioPlayer:elapse", event.name);
+        assertEquals(12.5, event.params.getDouble("elapsed"), 0.001);
+    }
+
+    @Test
+    public void progressEventsCanBeTurnedOff() throws Exception {
+        module.setProgressEvents(false);
+        module.onProgressUpdate(play("af-1", 7), 12.5f, 180f);
+        module.onStateChanged(State.PAUSED);
+
+        // only the state change arrives, so no elapse was sent before it
+        assertEquals("RNFMAudioPlayer:state-change", emitter.next().name);
+        assertNull(emitter.poll());
+    }
+
+    @Test
+    public void turningProgressEventsOffStopsAnchors() throws Exception {
+        module.setProgressAnchors(true, 0);
+        module.setProgressEvents(false);
+
+        module.onPlayStarted(play("af-1", 7));
+        module.onStateChanged(State.PLAYING);
+        module.onProgressUpdate(play("af-1", 7), 1f, 258f);
+
+        assertEquals("RNFMAudioPlayer:play-started", emitter.next().name);
+        assertEquals("RNFMAudioPlayer:state-change", emitter.next().name);
+        assertNull(emitter.poll());
+    }
+
+    @Test
+    public void playStartedCarriesThePlay() throws Exception {
+        module.onPlayStarted(play("af-1", 7));
+
+        Event event = emitter.next();
+        assertEquals("RNFMAudioPlayer:play-started", event.name);
+
+        ReadableMap play = event.params.getMap("play");
+        assertEquals("af-1", play.getString("id"));
+        assertEquals("Nightcall", play.getString("title"));
+        assertEquals("Kavinsky", play.getString("artist"));
+        assertEquals("OutRun", play.getString("album"));
+        assertEquals(258, play.getInt("duration"));
+        assertEquals(7, play.getInt("station_id"));
+        assertTrue(play.getBoolean("canSkip"));
+        assertEquals("synthwave", play.getMap("metadata").getString("genre"));
+    }
+
+    @Test
+    public void eventsArriveInCallbackOrder() throws Exception {
+        module.onStateChanged(State.WAITING_FOR_ITEM);
+        module.onPlayStarted(play("af-1", 7));
+        module.onStateChanged(State.PLAYING);
+        module.onProgressUpdate(play("af-1", 7), 1f, 258f);
+
+        assertEquals("RNFMAudioPlayer:state-change", emitter.next().name);
+        assertEquals("RNFMAudioPlayer:play-started", emitter.next().name);
+        assertEquals("RNFMAudioPlayer:state-change", emitter.next().name);
+        assertEquals("RNFMAudioPlayer:elapse", emitter.next().name);
+    }
+
+    @Test
+    public void playStartedWithoutStationIsNotSent() throws Exception {
+        Play play = play("af-1", 7);
+        when(play.getStation()).thenReturn(null);
+
+        module.onPlayStarted(play);
+        module.onStateChanged(State.PLAYING);
+
+        assertEquals("RNFMAudioPlayer:state-change", emitter.next().name);
+        assertNull(emitter.poll());
+    }
+
+    private static Play play(String audioFileId, int stationId) {
+        Track track = mock(Track.class);
+        when(track.getTitle()).thenReturn("Nightcall");
+        Artist artist = mock(Artist.class);
+        when(artist.getName()).thenReturn("Kavinsky");
+        Release release = mock(Release.class);
+        when(release.getTitle()).thenReturn("OutRun");
+
+        JsonObject metadata = new JsonObject();
+        metadata.addProperty("genre", "synthwave");
+
+        AudioFile audioFile = mock(AudioFile.class);
+        when(audioFile.getId()).thenReturn(audioFileId);
+        when(audioFile.getTrack()).thenReturn(track);
+        when(audioFile.getArtist()).thenReturn(artist);
+        when(audioFile.getRelease()).thenReturn(release);
+        when(audioFile.getDurationInSeconds()).thenReturn(258f);
+        doReturn(metadata).when(audioFile).getMetadata();
+
+        Station station = mock(Station.class);
+        when(station.getId()).thenReturn(stationId);
+
+        Play play = mock(Play.class);
+        when(play.getAudioFile()).thenReturn(audioFile);
+        when(play.getStation()).thenReturn(station);
+        return play;
+    }
+
+    private static final class Event {
+        final String name;
+        final ReadableMap params;
+
+        Event(String name, ReadableMap params) {
+            this.name = name;
+            this.params = params;
+        }
+    }
+
+    private static final class RecordingEmitter implements DeviceEventManagerModule.RCTDeviceEventEmitter {
+
+        private final BlockingQueue<Event> events = new LinkedBlockingQueue<>();
+
+        @Override
+        public void emit(String eventName, Object data) {
+            events.add(new Event(eventName, (ReadableMap) data));
+        }
+
+        Event next() throws InterruptedException {
+            Event event = events.poll(EVENT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            assertNotNull("no event within " + EVENT_TIMEOUT_MS + "ms", event);
+            return event;
+        }
+
+        // the next event, if one arrives shortly
+        Event poll() throws InterruptedException {
+            return events.poll(100, TimeUnit.MILLISECONDS);
+        }
+    }
+
+}
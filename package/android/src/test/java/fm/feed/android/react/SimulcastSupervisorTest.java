@@ -0,0 +1,236 @@
+package fm.feed.android.react;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import fm.feed.android.playersdk.SimulcastPlaybackState;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Drives the supervisor with a fake streamer on the main looper, moving the
+ * clock forward by hand.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SimulcastSupervisorTest {
+
+    private static final long STALL_THRESHOLD_MS = 8000;
+    private static final long BASE_DELAY_MS = 1000;
+    private static final long MAX_DELAY_MS = 4000;
+
+    private ShadowLooper looper;
+    private FakeTarget target;
+    private RecordingListener listener;
+
+    @Before
+    public void setUp() {
+        looper = shadowOf(Looper.getMainLooper());
+        target = new FakeTarget();
+        listener = new RecordingListener();
+    }
+
+    @Test
+    public void reconnectsBackOffExponentiallyUpToTheMaxDelay() {
+        // half of each delay is randomized, so 0.5 gives three quarters of it
+        SimulcastSupervisor supervisor = supervisor(new FixedRandom(0.5), 4);
+        supervisor.connectRequested();
+        supervisor.error();
+
+        for (int attempt = 1; attempt <= 4; attempt++) {
+            assertEquals(attempt, listener.attempts.size());
+            looper.idleFor(listener.lastDelay(), TimeUnit.MILLISECONDS);
+            assertEquals(attempt, target.reconnects);
+
+            // the new connection never starts playing
+            looper.idleFor(STALL_THRESHOLD_MS, TimeUnit.MILLISECONDS);
+        }
+
+        assertEquals(Arrays.asList(1, 2, 3, 4), listener.attempts);
+        assertEquals(Arrays.asList(750L, 1500L, 3000L, 3000L), listener.delays);
+        assertEquals(Arrays.asList(4), listener.gaveUp);
+    }
+
+    @Test
+    public void jitterKeepsEachDelayInTheUpperHalfOfItsBackoff() {
+        SimulcastSupervisor supervisor = supervisor(new Random(42), 10);
+        // a max delay high enough for the backoff to double several times
+        supervisor.configure(true, STALL_THRESHOLD_MS, BASE_DELAY_MS, 30000, 10);
+        supervisor.connectRequested();
+
+        for (int i = 0; i < 10; i++) {
+            supervisor.error();
+        }
+
+        assertEquals(10, listener.delays.size());
+        for (int i = 0; i < 10; i++) {
+            long backoff = Math.min(30000, BASE_DELAY_MS << i);
+            long delay = listener.delays.get(i);
+            assertTrue("attempt " + (i + 1) + " waited " + delay + "ms", delay >= backoff / 2);
+            assertTrue("attempt " + (i + 1) + " waited " + delay + "ms", delay < backoff);
+        }
+    }
+
+    @Test
+    public void stallReconnectsOnlyAfterTheThreshold() {
+        SimulcastSupervisor supervisor = supervisor(new FixedRandom(0), 5);
+        supervisor.connectRequested();
+        supervisor.stateChanged(SimulcastPlaybackState.Stalled);
+
+        looper.idleFor(STALL_THRESHOLD_MS - 1, TimeUnit.MILLISECONDS);
+        assertTrue(listener.attempts.isEmpty());
+
+        looper.idleFor(1, TimeUnit.MILLISECONDS);
+        assertEquals(Arrays.asList(1), listener.attempts);
+        assertEquals(Arrays.asList(BASE_DELAY_MS / 2), listener.delays);
+
+        looper.idleFor(BASE_DELAY_MS / 2, TimeUnit.MILLISECONDS);
+        assertEquals(1, target.reconnects);
+    }
+
+    @Test
+    public void shortStallIsNotReconnected() {
+        SimulcastSupervisor supervisor = supervisor(new FixedRandom(0), 5);
+        supervisor.connectRequested();
+        supervisor.stateChanged(SimulcastPlaybackState.Stalled);
+
+        looper.idleFor(STALL_THRESHOLD_MS / 2, TimeUnit.MILLISECONDS);
+        supervisor.stateChanged(SimulcastPlaybackState.Playing);
+        looper.idleFor(STALL_THRESHOLD_MS, TimeUnit.MILLISECONDS);
+
+        assertTrue(listener.attempts.isEmpty());
+        assertEquals(0, target.reconnects);
+        assertFalse(supervisor.isRecovering());
+    }
+
+    @Test
+    public void playingAfterAReconnectRecovers() {
+        SimulcastSupervisor supervisor = supervisor(new FixedRandom(0), 5);
+        supervisor.connectRequested();
+        supervisor.error();
+
+        looper.idleFor(BASE_DELAY_MS / 2, TimeUnit.MILLISECONDS);
+        assertEquals(1, target.reconnects);
+
+        looper.idleFor(1200, TimeUnit.MILLISECONDS);
+        supervisor.stateChanged(SimulcastPlaybackState.Playing);
+
+        assertEquals(Arrays.asList(1), listener.recoveredAttempts);
+        assertEquals(Arrays.asList(BASE_DELAY_MS / 2 + 1200), listener.recoveryMs);
+        assertFalse(supervisor.isRecovering());
+
+        // the watchdog for the new connection was cancelled
+        looper.idleFor(STALL_THRESHOLD_MS, TimeUnit.MILLISECONDS);
+        assertEquals(Arrays.asList(1), listener.attempts);
+    }
+
+    @Test
+    public void givesUpAfterMaxAttempts() {
+        SimulcastSupervisor supervisor = supervisor(new FixedRandom(0), 3);
+        supervisor.connectRequested();
+
+        for (int i = 0; i < 4; i++) {
+            supervisor.error();
+        }
+
+        assertEquals(Arrays.asList(1, 2, 3), listener.attempts);
+        assertEquals(Arrays.asList(3), listener.gaveUp);
+        assertFalse(supervisor.isRecovering());
+
+        // nothing is left scheduled, and the supervisor stays quiet until asked again
+        looper.idleFor(MAX_DELAY_MS + STALL_THRESHOLD_MS, TimeUnit.MILLISECONDS);
+        supervisor.stateChanged(SimulcastPlaybackState.Stalled);
+        looper.idleFor(STALL_THRESHOLD_MS, TimeUnit.MILLISECONDS);
+
+        assertEquals(0, target.reconnects);
+        assertEquals(3, listener.attempts.size());
+    }
+
+    @Test
+    public void disconnectCancelsAScheduledReconnect() {
+        SimulcastSupervisor supervisor = supervisor(new FixedRandom(0), 5);
+        supervisor.connectRequested();
+        supervisor.error();
+        supervisor.disconnectRequested();
+
+        looper.idleFor(MAX_DELAY_MS, TimeUnit.MILLISECONDS);
+        assertEquals(0, target.reconnects);
+    }
+
+    private SimulcastSupervisor supervisor(Random random, int maxAttempts) {
+        SimulcastSupervisor supervisor = new SimulcastSupervisor(new Handler(Looper.getMainLooper()),
+                target, listener, random);
+        supervisor.configure(true, STALL_THRESHOLD_MS, BASE_DELAY_MS, MAX_DELAY_MS, maxAttempts);
+        return supervisor;
+    }
+
+    private static final class FakeTarget implements SimulcastSupervisor.Target {
+
+        int reconnects;
+
+        @Override
+        public void reconnect() {
+            reconnects++;
+        }
+    }
+
+    private static final class RecordingListener implements SimulcastSupervisor.Listener {
+
+        final List<Integer> attempts = new ArrayList<>();
+        final List<Long> delays = new ArrayList<>();
+        final List<Integer> recoveredAttempts = new ArrayList<>();
+        final List<Long> recoveryMs = new ArrayList<>();
+        final List<Integer> gaveUp = new ArrayList<>();
+
+        @Override
+        public void reconnectScheduled(int attempt, long delayMs) {
+            attempts.add(attempt);
+            delays.add(delayMs);
+        }
+
+        @Override
+        public void recovered(int attempts, long recoveryMs) {
+            recoveredAttempts.add(attempts);
+            this.recoveryMs.add(recoveryMs);
+        }
+
+        @Override
+        public void gaveUp(int attempts) {
+            gaveUp.add(attempts);
+        }
+
+        long lastDelay() {
+            return delays.get(delays.size() - 1);
+        }
+    }
+
+    // always draws the same jitter
+    private static final class FixedRandom extends Random {
+
+        private final double value;
+
+        FixedRandom(double value) {
+            this.value = value;
+        }
+
+        @Override
+        public double nextDouble() {
+            return value;
+        }
+    }
+
+}
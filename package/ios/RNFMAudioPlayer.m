@@ -19,10 +19,31 @@ RCT_ENUM_CONVERTER(FMAudioPlayerPlaybackState, (@{
 @end
 
 
-@implementation RNFMAudioPlayer
+@implementation RNFMAudioPlayer {
+    // values last seen in player notifications, for the synchronous getters;
+    // guarded by @synchronized (self)
+    BOOL _canSkip;
+    BOOL _canLike;
+    double _maxSeekableLength;
+    FMAudioPlayerPlaybackState _state;
+    double _elapsed;
+    double _duration;
+    NSTimeInterval _elapsedAt;
+    long _progressSequence;
+    BOOL _progressEvents;
+}
 
 RCT_EXPORT_MODULE()
 
+- (instancetype)init
+{
+    if (self = [super init]) {
+        _state = FMAudioPlayerPlaybackStateUninitialized;
+        _progressEvents = YES;
+    }
+    return self;
+}
+
 - (dispatch_queue_t)methodQueue
 {
   return dispatch_get_main_queue();
@@ -49,15 +70,21 @@ RCT_EXPORT_MODULE()
 };
 
 - (NSArray<NSString *> *)supportedEvents {
-    return @[@"musicQueued",
-             @"newClientID",
-             @"availability",
-             @"state-change",
-             @"station-change",
-             @"play-started",
-             @"skip-failed",
-             @"elapse",
-             @"session-updated"
+    return @[@"RNFMAudioPlayer:musicQueued",
+             @"RNFMAudioPlayer:newClientID",
+             @"RNFMAudioPlayer:availability",
+             @"RNFMAudioPlayer:state-change",
+             @"RNFMAudioPlayer:station-change",
+             @"RNFMAudioPlayer:play-started",
+             @"RNFMAudioPlayer:skip-failed",
+             @"RNFMAudioPlayer:elapse",
+             @"RNFMAudioPlayer:session-updated",
+             // only sent on Android, but javascript subscribes on both platforms
+             @"RNFMAudioPlayer:stations-diff",
+             @"RNFMAudioPlayer:progress-anchor",
+             @"RNFMAudioPlayer:event-batch",
+             @"RNFMAudioPlayer:qoe-summary",
+             @"RNFMAudioPlayer:metadata-cache-reset"
      ];
 }
 
@@ -94,14 +121,14 @@ RCT_EXPORT_METHOD(initializeWithToken:(NSString *)token secret:(NSString *)secre
         // the active station is not set at this time, so assume it is the first station
         FMStation *station = [self->_player.stationList firstObject];
         
-        [self sendEventWithName:@"availability" body:@{
+        [self sendEventWithName:@"RNFMAudioPlayer:availability" body:@{
                                            @"available": @YES,
                                            @"stations": [self mapStationListToDictionary:self->_player.stationList],
                                            @"activeStationId": station.identifier,
                                            @"clientID": [self->_player getClientId]
                                            }];
     } notAvailable:^{
-        [self sendEventWithName:@"availability" body:@{
+        [self sendEventWithName:@"RNFMAudioPlayer:availability" body:@{
                                            @"available": @NO
                                            }];
     }];
@@ -176,6 +203,66 @@ RCT_REMAP_METHOD(canSkip, canSkipResolver: (RCTPromiseResolveBlock)resolve
     
     resolve([NSNumber numberWithBool:[player canSkip]]);
 }
+// The synchronous getters return the values last seen in player
+// notifications, without waiting on the main queue.
+
+RCT_EXPORT_BLOCKING_SYNCHRONOUS_METHOD(canLikeSync)
+{
+    @synchronized (self) {
+        return @(_canLike);
+    }
+}
+
+RCT_EXPORT_BLOCKING_SYNCHRONOUS_METHOD(canSkipSync)
+{
+    @synchronized (self) {
+        return @(_canSkip);
+    }
+}
+
+RCT_EXPORT_BLOCKING_SYNCHRONOUS_METHOD(maxSeekableLengthInSecondsSync)
+{
+    @synchronized (self) {
+        return @(_maxSeekableLength);
+    }
+}
+
+RCT_EXPORT_BLOCKING_SYNCHRONOUS_METHOD(playbackStateSync)
+{
+    @synchronized (self) {
+        return @(_state);
+    }
+}
+
+RCT_EXPORT_METHOD(setProgressEvents: (BOOL) enabled)
+{
+    @synchronized (self) {
+        _progressEvents = enabled;
+    }
+}
+
+// elapsed is advanced to now while playing, so this can be polled every frame
+RCT_EXPORT_BLOCKING_SYNCHRONOUS_METHOD(readProgress)
+{
+    @synchronized (self) {
+        BOOL playing = (_state == FMAudioPlayerPlaybackStatePlaying);
+        double elapsed = _elapsed;
+        if (playing && _elapsedAt > 0) {
+            elapsed += [NSProcessInfo processInfo].systemUptime - _elapsedAt;
+        }
+        if (_duration > 0) {
+            elapsed = MIN(elapsed, _duration);
+        }
+
+        return @{
+            @"elapsed": @(elapsed),
+            @"duration": @(_duration),
+            @"playing": @(playing),
+            @"sequence": @(_progressSequence)
+        };
+    }
+}
+
 RCT_EXPORT_METHOD(stop)
 {
     FMAudioPlayer *player = [FMAudioPlayer sharedPlayer];
@@ -193,6 +280,45 @@ RCT_REMAP_METHOD(maxSeekableLengthInSeconds, maxSeekableLengthInSecondsWithResol
     resolve([NSNumber numberWithDouble: FMAudioPlayer.sharedPlayer.maxSeekableLength]);
 }
 
+// runs on the main queue, so every value is read at the same moment
+RCT_REMAP_METHOD(getPlayerSnapshot, getPlayerSnapshotWithResolver:(RCTPromiseResolveBlock)resolve rejecter:(RCTPromiseRejectBlock)reject)
+{
+    FMAudioPlayer *player = [FMAudioPlayer sharedPlayer];
+    FMAudioPlayerPlaybackState state = player.playbackState;
+    if (state == FMAudioPlayerPlaybackStateComplete) {
+        state = FMAudioPlayerPlaybackStateReadyToPlay;
+    }
+
+    NSMutableDictionary *snapshot = [@{
+        @"state": @(state),
+        @"elapsed": [NSNumber numberWithDouble: player.currentPlaybackTime],
+        @"canSkip": [NSNumber numberWithBool:[player canSkip]],
+        @"canLike": [NSNumber numberWithBool:[player canLike]],
+        @"maxSeekableLengthInSeconds": [NSNumber numberWithDouble: player.maxSeekableLength],
+        @"volume": [NSNumber numberWithFloat: player.mixVolume]
+    } mutableCopy];
+
+    if (player.activeStation.identifier != nil) {
+        snapshot[@"activeStationId"] = player.activeStation.identifier;
+    }
+
+    FMAudioItem *current = player.currentItem;
+    if (current != nil && current.station.identifier != nil) {
+        snapshot[@"play"] = @{
+            @"id": current.playId,
+            @"title": current.name,
+            @"artist": current.artist,
+            @"album": current.album,
+            @"metadata": current.metadata,
+            @"station_id": current.station.identifier,
+            @"duration": @(lroundf(player.currentItemDuration)),
+            @"canSkip": [NSNumber numberWithBool:[player canSkip]]
+        };
+    }
+
+    resolve(snapshot);
+}
+
 RCT_EXPORT_METHOD(seekCurrentStationBy: (float) seconds)
 {
     FMAudioPlayer *player = [FMAudioPlayer sharedPlayer];
@@ -209,7 +335,7 @@ RCT_EXPORT_METHOD(setClientID: (NSString*)cid )
     [self.player updateSession:^{
         FMStation *station = [self->_player.stationList firstObject];
 
-        [self sendEventWithName:@"session-updated" body:@{
+        [self sendEventWithName:@"RNFMAudioPlayer:session-updated" body:@{
             @"stations": [self mapStationListToDictionary:self->_player.stationList],
             @"activeStationId": station.identifier,
             @"clientID": [self->_player getClientId]
@@ -226,7 +352,7 @@ RCT_EXPORT_METHOD(updateSession)
     [self.player updateSession:^{
         FMStation *station = [self->_player.stationList firstObject];
 
-        [self sendEventWithName:@"session-updated" body:@{
+        [self sendEventWithName:@"RNFMAudioPlayer:session-updated" body:@{
             @"stations": [self mapStationListToDictionary:self->_player.stationList],
             @"activeStationId": station.identifier,
             @"clientID": [self->_player getClientId]
@@ -252,7 +378,7 @@ RCT_EXPORT_METHOD(logEvent: (NSString*) event withParams:(NSDictionary*) params)
      
 -(void) onMusicQueued: (NSNotification *)notification  {
     
-    [self sendEventWithName:@"musicQueued" body:@{}];
+    [self sendEventWithName:@"RNFMAudioPlayer:musicQueued" body:@{}];
     
 }
 
@@ -270,7 +396,7 @@ RCT_EXPORT_METHOD(logEvent: (NSString*) event withParams:(NSDictionary*) params)
     [self.player updateSession:^{
         FMStation *station = [self->_player.stationList firstObject];
 
-        [self sendEventWithName:@"session-updated" body:@{
+        [self sendEventWithName:@"RNFMAudioPlayer:session-updated" body:@{
             @"stations": [self mapStationListToDictionary:self->_player.stationList],
             @"activeStationId": station.identifier,
             @"clientID": [self->_player getClientId]
@@ -279,20 +405,54 @@ RCT_EXPORT_METHOD(logEvent: (NSString*) event withParams:(NSDictionary*) params)
     }];
 }
 
+// called on the main queue, where the player may be read
+- (void) refreshStatus {
+    FMAudioPlayerPlaybackState state = _player.playbackState;
+    if (state == FMAudioPlayerPlaybackStateComplete) {
+        state = FMAudioPlayerPlaybackStateReadyToPlay;
+    }
+
+    BOOL canSkip = [_player canSkip];
+    BOOL canLike = [_player canLike];
+    double maxSeekableLength = _player.maxSeekableLength;
+    double elapsed = _player.currentPlaybackTime;
+    double duration = _player.currentItemDuration;
+
+    @synchronized (self) {
+        _state = state;
+        _canSkip = canSkip;
+        _canLike = canLike;
+        _maxSeekableLength = maxSeekableLength;
+        _elapsed = elapsed;
+        _duration = duration;
+        _elapsedAt = [NSProcessInfo processInfo].systemUptime;
+        _progressSequence++;
+    }
+}
+
 - (void) onElapsedNotification: (NSNotification*)notification  {
-    [self sendEventWithName:@"elapse" body:@{
+    [self refreshStatus];
+
+    @synchronized (self) {
+        if (!_progressEvents) {
+            return;
+        }
+    }
+
+    [self sendEventWithName:@"RNFMAudioPlayer:elapse" body:@{
         @"elapsed": [NSNumber numberWithDouble: _player.currentPlaybackTime]
     }];
 }
 
 - (void) onSkipFailedNotification: (NSNotification *)notification {
-    [self sendEventWithName:@"skip-failed" body:@{ }];
+    [self refreshStatus];
+    [self sendEventWithName:@"RNFMAudioPlayer:skip-failed" body:@{ }];
 }
 
 - (void) onActiveStationDidChangeNotification: (NSNotification *)notification {
     FMAudioPlayer *player = [FMAudioPlayer sharedPlayer];
     if(player.activeStation.identifier != nil) {
-        [self sendEventWithName:@"station-change" body:@{
+        [self sendEventWithName:@"RNFMAudioPlayer:station-change" body:@{
             @"activeStationId": player.activeStation.identifier }];
     }
 }
@@ -305,16 +465,20 @@ RCT_EXPORT_METHOD(logEvent: (NSString*) event withParams:(NSDictionary*) params)
     if (state == FMAudioPlayerPlaybackStateComplete) {
         state = FMAudioPlayerPlaybackStateReadyToPlay;
     }
+
+    [self refreshStatus];
     
-    [self sendEventWithName:@"state-change" body:@{
+    [self sendEventWithName:@"RNFMAudioPlayer:state-change" body:@{
                                        @"state": @(state) }];
 }
 
 - (void) onCurrentItemDidBeginPlaybackNotification: (NSNotification *)notification {
+    [self refreshStatus];
+
     FMAudioItem *current = _player.currentItem;
     if(current != nil && current.station.identifier != nil) {
         long duration = lroundf(_player.currentItemDuration);
-        [self sendEventWithName:@"play-started"
+        [self sendEventWithName:@"RNFMAudioPlayer:play-started"
                            body:@{
                                @"play": @{
                                        @"id": current.playId,
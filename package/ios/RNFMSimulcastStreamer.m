@@ -56,10 +56,15 @@ RCT_EXPORT_MODULE()
 
 
 - (NSArray<NSString *> *)supportedEvents {
-    return @[@"state-change",
-             @"play-started",
-             @"elapse",
-             @"error"
+    return @[@"RNFMSimulcastStreamer:state-change",
+             @"RNFMSimulcastStreamer:play-started",
+             @"RNFMSimulcastStreamer:elapse",
+             @"RNFMSimulcastStreamer:error",
+             // only sent on Android, but javascript subscribes on both platforms
+             @"RNFMSimulcastStreamer:progress-anchor",
+             @"RNFMSimulcastStreamer:reconnect",
+             @"RNFMSimulcastStreamer:qoe-summary",
+             @"RNFMSimulcastStreamer:event-batch"
      ];
 }
 
@@ -103,7 +108,7 @@ RCT_EXPORT_METHOD(disconnect:(BOOL) force) {
     if (!_streamer) { return; }
 
     if (item != NULL || item.id != NULL) {
-       [self sendEventWithName:@"play-started" body:@{
+       [self sendEventWithName:@"RNFMSimulcastStreamer:play-started" body:@{
         @"play": @{
                 @"title": item.name,
                 @"artist": item.artist,
@@ -120,7 +125,7 @@ RCT_EXPORT_METHOD(disconnect:(BOOL) force) {
 
     if (!_streamer) { return; }
     
-    [self sendEventWithName:@"state-change" body:@{@"state":@(state)}];
+    [self sendEventWithName:@"RNFMSimulcastStreamer:state-change" body:@{@"state":@(state)}];
 }
 
 - (void)elapse:(CMTime)elapseTime {
@@ -128,13 +133,13 @@ RCT_EXPORT_METHOD(disconnect:(BOOL) force) {
 
     long duration = lroundf(CMTimeGetSeconds(elapseTime));
     if ([self bridge] != nil) {
-        [self sendEventWithName:@"elapse" body:@{@"elapsed":@(duration)}];
+        [self sendEventWithName:@"RNFMSimulcastStreamer:elapse" body:@{@"elapsed":@(duration)}];
     }
 }
 
 - (void)onError:(NSString * _Nullable)error {
     RCTLogInfo(@"Error %@", error);
-    [self sendEventWithName:@"error" body:@{@"error":error}];
+    [self sendEventWithName:@"RNFMSimulcastStreamer:error" body:@{@"error":error}];
 }
 
 RCT_EXPORT_METHOD(setVolume: (float) volume) {
@@ -3,6 +3,23 @@ import { NativeModules, NativeEventEmitter, Platform } from 'react-native';
 import NanoEvents from 'nanoevents';
 const { RNFMAudioPlayer } = NativeModules;
 
+// native events are named '<module>:<event>'
+const EVENT_PREFIX = 'RNFMAudioPlayer:';
+
+function stateName(state) {
+  switch (state) {
+    case RNFMAudioPlayer.audioPlayerPlaybackStateUninitialized: return 'UNINITIALIZED';
+    case RNFMAudioPlayer.audioPlayerPlaybackStateOfflineOnly: return 'OFFLINE';
+    case RNFMAudioPlayer.audioPlayerPlaybackStateUnavailable: return 'UNAVAILABLE';
+    case RNFMAudioPlayer.audioPlayerPlaybackStateWaitingForItem: return 'WAITING_FOR_ITEM';
+    case RNFMAudioPlayer.audioPlayerPlaybackStateReadyToPlay: return 'READY_TO_PLAY';
+    case RNFMAudioPlayer.audioPlayerPlaybackStatePlaying: return 'PLAYING';
+    case RNFMAudioPlayer.audioPlayerPlaybackStatePaused: return 'PAUSED';
+    case RNFMAudioPlayer.audioPlayerPlaybackStateStalled: return 'STALLED';
+    default: return 'UNINITIALIZED';
+  }
+}
+
 /* 
  * AudioPlayer is the bridge to a native FMAudioPlayer instance. This class tries
  * to keep track of the state of the native player and forward on events to javascript
@@ -31,6 +48,10 @@ const { RNFMAudioPlayer } = NativeModules;
  * state-change - the player's state has changed
  * station-change - the current station has changed
  * skip-failed - the last skip request has failed
+ * provisional-availability - (Android only) stations saved from the last run are
+ *    available in `stations` for display, before the player has confirmed them.
+ *    A diff is applied once the player is available. See `setSessionCache()`.
+ * qoe-summary - (Android only) periodic playback quality summary, see `setQoeSummaryInterval()`
  */
 
 class AudioPlayer {
@@ -45,19 +66,34 @@ class AudioPlayer {
     this._available = null;
     this._availabilityCallbacks = [];
 
+    // audio file id -> details of plays the native player won't resend
+    this._playCache = new Map();
+
     // how we communicate to clients:
     this._emitter = new NanoEvents();
 
-    // register to get notices from native event emitters
+    // native event name -> handler
+    this._nativeHandlers = {
+      'availability': this.onAvailability.bind(this),
+      'session-updated': this.onSessionUpdated.bind(this),
+      'state-change': this.onStateChange.bind(this),
+      'station-change': this.onStationChange.bind(this),
+      'play-started': this.onPlayStarted.bind(this),
+      'skip-failed': this.onSkipFailed.bind(this),
+      'elapse': this.onElapse.bind(this),
+      'progress-anchor': this.onProgressAnchor.bind(this),
+      'musicQueued': this.onMusicQueued.bind(this),
+      'stations-diff': this.onStationsDiff.bind(this),
+      'qoe-summary': this.onQoeSummary.bind(this),
+      'metadata-cache-reset': this.onMetadataCacheReset.bind(this)
+    };
+
+    // register to get notices from native event emitters; native event names
+    // are prefixed with the module name, so streamer events never land here
     const nativeEmitter = new NativeEventEmitter(RNFMAudioPlayer);
-    this.availabilitySubscription = nativeEmitter.addListener('availability', this.onAvailability.bind(this));
-    this.updatedSessionSubscription = nativeEmitter.addListener('session-updated', this.onSessionUpdated.bind(this));
-    this.stateChangeSubscription = nativeEmitter.addListener('state-change', this.onStateChange.bind(this));
-    this.onStationChangeSubscription = nativeEmitter.addListener('station-change', this.onStationChange.bind(this));
-    this.onPlayStartedSubscription = nativeEmitter.addListener('play-started', this.onPlayStarted.bind(this));
-    this.onSkipFailedSubscription = nativeEmitter.addListener('skip-failed', this.onSkipFailed.bind(this));
-    this.elapseSubscription = nativeEmitter.addListener('elapse', this.onElapse.bind(this));
-    this.prepareSubscription = nativeEmitter.addListener('musicQueued', this.onMusicQueued.bind(this));
+    this._nativeSubscriptions = Object.keys(this._nativeHandlers).map((event) =>
+      nativeEmitter.addListener(EVENT_PREFIX + event, this._nativeHandlers[event]));
+    this._nativeSubscriptions.push(nativeEmitter.addListener(EVENT_PREFIX + 'event-batch', this.onEventBatch.bind(this)));
   }
 
   log() {
@@ -191,6 +227,224 @@ class AudioPlayer {
     RNFMAudioPlayer.stop();
   }
 
+  /**
+   * Android only: choose how the native player delivers events to javascript.
+   *
+   * @param {string} policy - 'immediate' (default) sends every event as it happens,
+   *    'frame' bundles events until the next display frame, 'window' bundles
+   *    events for `windowMs` milliseconds. When bundling, only the latest
+   *    'elapse' and 'state-change' in each bundle are delivered.
+   * @param {number} [windowMs] - bundling window for the 'window' policy
+   */
+  setEventBatching(policy, windowMs = 16) {
+    this.log('client setting event batching to ' + policy);
+
+    if (Platform.OS === 'android') {
+      RNFMAudioPlayer.setEventBatching(policy, windowMs);
+    }
+  }
+
+  /**
+   * Android only: return promise with latency statistics for playback commands,
+   * measured from when the native player receives the command until the
+   * SDK confirms it (play until PLAYING, pause until PAUSED, stop until
+   * READY_TO_PLAY, skip until the next song starts, setting the active
+   * station until music is queued, seek until the next progress update).
+   *
+   * The result maps each command (play, pause, stop, skip, seek,
+   * set_active_station) to:
+   * { count, min, max, mean, p50, p90, p95, p99, cancelled, pending }
+   * with times in milliseconds.
+   */
+  getMetrics() {
+    if (Platform.OS === 'android') {
+      return RNFMAudioPlayer.getMetrics();
+    }
+
+    return Promise.resolve(null);
+  }
+
+  /**
+   * Android only: return promise with playback quality figures for this
+   * session and for each station played in it:
+   *
+   * {
+   *   session: {
+   *     startupLatency: { count, min, max, mean, p50, p90, p95, p99 }, // play() until audio
+   *     skipToAudioLatency: { ... },  // skip() until the next song plays
+   *     stallCount, stallMs, longestStallMs, playMs,
+   *     rebufferRatio,                // stallMs / (playMs + stallMs)
+   *     stallsPerHour
+   *   },
+   *   currentStation: 'id',
+   *   stations: { 'id': { ...same as session... }, ... }
+   * }
+   */
+  getQoeSnapshot() {
+    if (Platform.OS === 'android') {
+      return RNFMAudioPlayer.getQoeSnapshot();
+    }
+
+    return Promise.resolve(null);
+  }
+
+  /**
+   * Android only: emit a 'qoe-summary' event with the session figures from
+   * `getQoeSnapshot()` every `intervalMs` milliseconds. Pass 0 to stop.
+   */
+  setQoeSummaryInterval(intervalMs) {
+    if (Platform.OS === 'android') {
+      RNFMAudioPlayer.setQoeSummaryInterval(intervalMs);
+    }
+  }
+
+  /**
+   * Android only: clear the statistics returned by `getMetrics()`.
+   */
+  resetMetrics() {
+    if (Platform.OS === 'android') {
+      RNFMAudioPlayer.resetMetrics();
+    }
+  }
+
+  /**
+   * Android only: return promise with statistics about playback commands
+   * (play, pause, stop, skip, seek, set_active_station). For each command
+   * it has the number executed, coalesced with an earlier command, and dropped
+   * because the player state made them pointless, plus the average and
+   * maximum milliseconds they waited before running.
+   */
+  getCommandQueueStats() {
+    if (Platform.OS === 'android') {
+      return RNFMAudioPlayer.getCommandQueueStats();
+    }
+
+    return Promise.resolve(null);
+  }
+
+  /**
+   * Android only: when enabled (the default), the station list, client id and
+   * active station are saved, and on the next start they are made available
+   * through `stations` (with a 'provisional-availability' event) before the
+   * player has contacted Feed.fm. A saved session is only used with the same
+   * token, and is discarded after `maxAgeMs` (default 24 hours).
+   *
+   * Call this before `initialize()` for it to affect the current start.
+   */
+  setSessionCache(enabled, maxAgeMs = 0) {
+    if (Platform.OS === 'android') {
+      RNFMAudioPlayer.setSessionCache(!!enabled, maxAgeMs);
+    }
+  }
+
+  /**
+   * Android only: prepare music for the given stations ahead of time, so that
+   * switching to one of them with `activeStation` doesn't wait for music to
+   * load. List the most likely stations first. Only the first few (3 by
+   * default, see `setWarmStationPolicy()`) are warmed, and stations that
+   * haven't been asked for recently are forgotten first.
+   *
+   * @param {number[]} stationIds
+   */
+  warmStations(stationIds) {
+    if (Platform.OS === 'android') {
+      RNFMAudioPlayer.warmStations(stationIds);
+    }
+  }
+
+  /**
+   * Android only: keep at most `maxStations` stations warm, and prepare a warm
+   * station again after `refreshIntervalMs` (default 10 minutes).
+   */
+  setWarmStationPolicy(maxStations, refreshIntervalMs = 0) {
+    if (Platform.OS === 'android') {
+      RNFMAudioPlayer.setWarmStationPolicy(maxStations, refreshIntervalMs);
+    }
+  }
+
+  /**
+   * Android only: return promise with { warm: [ids], pending, maxStations,
+   * requested, prepared, failed, evicted, hits, misses }, where hits and misses
+   * count station changes to warm and cold stations.
+   */
+  getWarmStationStats() {
+    if (Platform.OS === 'android') {
+      return RNFMAudioPlayer.getWarmStationStats();
+    }
+
+    return Promise.resolve(null);
+  }
+
+  /**
+   * Android only: when enabled (the default), 'play-started' events for audio
+   * files that have already played in this session carry only the id and the
+   * fields that change, and the rest is filled in from a copy kept here.
+   * `maxBytes` (default 512KB) bounds the estimated size of those copies,
+   * and the least recently played are dropped first.
+   *
+   * @param {boolean} enabled
+   * @param {number} [maxBytes]
+   */
+  setMetadataCache(enabled, maxBytes = 0) {
+    if (Platform.OS === 'android') {
+      if (!enabled) {
+        this._playCache.clear();
+      }
+      RNFMAudioPlayer.setMetadataCache(!!enabled, maxBytes);
+    }
+  }
+
+  /**
+   * Android only: forget cached audio file details, so that the next play of
+   * each audio file carries everything again. This happens automatically
+   * whenever the session is updated.
+   */
+  invalidateMetadataCache() {
+    if (Platform.OS === 'android') {
+      RNFMAudioPlayer.invalidateMetadataCache();
+    }
+  }
+
+  /**
+   * Android only: return promise with { enabled, entries, bytes, hits,
+   * misses, evictions } for the audio file details cache.
+   */
+  getMetadataCacheStats() {
+    if (Platform.OS === 'android') {
+      return RNFMAudioPlayer.getMetadataCacheStats();
+    }
+
+    return Promise.resolve(null);
+  }
+
+  /**
+   * Android only: return promise with the time native player callbacks spent on
+   * the main thread, and the time spent building and sending their events on a
+   * background thread, in microseconds:
+   *
+   * {
+   *   callbacks: { onPlayStarted: { count, min, max, mean, p50, p90, p95, p99 }, ... },
+   *   serialization: { count, min, max, ... },
+   *   queued: xx   // events waiting to be built and sent
+   * }
+   */
+  getCallbackStats() {
+    if (Platform.OS === 'android') {
+      return RNFMAudioPlayer.getCallbackStats();
+    }
+
+    return Promise.resolve(null);
+  }
+
+  /**
+   * Android only: forget the timings reported by `getCallbackStats()`.
+   */
+  resetCallbackStats() {
+    if (Platform.OS === 'android') {
+      RNFMAudioPlayer.resetCallbackStats();
+    }
+  }
+
   /**
    * Return promise with the number of seconds the player can jump ahead in the current station.
    */
@@ -233,17 +487,77 @@ class AudioPlayer {
    */
 
   get playbackState() {
-    switch (this._state) {
-      case RNFMAudioPlayer.audioPlayerPlaybackStateUninitialized: return 'UNINITIALIZED';
-      case RNFMAudioPlayer.audioPlayerPlaybackStateOfflineOnly: return 'OFFLINE';
-      case RNFMAudioPlayer.audioPlayerPlaybackStateUnavailable: return 'UNAVAILABLE';
-      case RNFMAudioPlayer.audioPlayerPlaybackStateWaitingForItem: return 'WAITING_FOR_ITEM';
-      case RNFMAudioPlayer.audioPlayerPlaybackStateReadyToPlay: return 'READY_TO_PLAY';
-      case RNFMAudioPlayer.audioPlayerPlaybackStatePlaying: return 'PLAYING';
-      case RNFMAudioPlayer.audioPlayerPlaybackStatePaused: return 'PAUSED';
-      case RNFMAudioPlayer.audioPlayerPlaybackStateStalled: return 'STALLED';
-      default: return 'UNINITIALIZED';
-    }
+    return stateName(this._state);
+  }
+
+  /**
+   * Synchronous versions of `canSkip`, `canLike`, `maxSeekableLengthInSeconds`
+   * and `playbackState`. These return the values the native player last reported,
+   * without a promise, so they can be called on every render.
+   */
+
+  canSkipSync() {
+    return RNFMAudioPlayer.canSkipSync();
+  }
+
+  canLikeSync() {
+    return RNFMAudioPlayer.canLikeSync();
+  }
+
+  maxSeekableLengthInSecondsSync() {
+    return RNFMAudioPlayer.maxSeekableLengthInSecondsSync();
+  }
+
+  playbackStateSync() {
+    return stateName(RNFMAudioPlayer.playbackStateSync());
+  }
+
+  /**
+   * Read the full player state from the native player in one call, and bring
+   * `playbackState`, `activeStation`, `currentPlay` and `elapsedTime` up to
+   * date with it. Use this to rebuild UI after a reload, instead of asking for
+   * each value separately. Returns a promise that resolves with:
+   *
+   * {
+   *   state: 'PLAYING',
+   *   activeStation: { ... },  // from `stations`, or undefined
+   *   currentPlay: { ... },    // as in `currentPlay`, or undefined
+   *   elapsed: xx,             // seconds into the current play
+   *   canSkip: true|false,
+   *   canLike: true|false,
+   *   maxSeekableLengthInSeconds: xx,
+   *   volume: xx               // 0..1
+   * }
+   */
+  getPlayerSnapshot() {
+    return RNFMAudioPlayer.getPlayerSnapshot().then((snapshot) => {
+      this._state = snapshot.state;
+
+      if (snapshot.activeStationId !== undefined && this._stations) {
+        this._activeStation = this._stations.find((station) => station.id === snapshot.activeStationId);
+      }
+
+      if (snapshot.play) {
+        const { station_id, ...play } = snapshot.play;
+        this._currentPlay = play;
+      }
+
+      this._elapsedPlayTime = snapshot.elapsed;
+      if (this._progressAnchor) {
+        this._progressAnchor = { ...this._progressAnchor, elapsed: snapshot.elapsed, receivedAt: Date.now() };
+      }
+
+      return {
+        state: this.playbackState,
+        activeStation: this._activeStation,
+        currentPlay: this._currentPlay,
+        elapsed: snapshot.elapsed,
+        canSkip: snapshot.canSkip,
+        canLike: snapshot.canLike,
+        maxSeekableLengthInSeconds: snapshot.maxSeekableLengthInSeconds,
+        volume: snapshot.volume
+      };
+    });
   }
 
   /**
@@ -287,15 +601,126 @@ class AudioPlayer {
     RNFMAudioPlayer.setVolume(volume);
   }
 
+  /**
+   * Ramp the volume to `target` (0..1) over `durationMs`. On Android the ramp
+   * runs natively, so a busy javascript thread doesn't make it stutter, and any
+   * later volume change or fade cancels it. Returns a promise that resolves
+   * with { volume, completed } when the ramp ends.
+   *
+   * On iOS the volume is set immediately.
+   *
+   * @param {number} target
+   * @param {number} durationMs
+   * @param {string} [curve] - 'linear' (default), 'ease-in', 'ease-out' or 'equal-power'
+   */
+  fadeTo(target, durationMs, curve = 'linear') {
+    this.log('client fading music volume to ' + target + ' over ' + durationMs + 'ms');
+
+    if (Platform.OS === 'android') {
+      return RNFMAudioPlayer.fadeTo(target, durationMs, curve);
+    }
+
+    RNFMAudioPlayer.setVolume(target);
+    return Promise.resolve({ volume: target, completed: true });
+  }
+
+  /**
+   * Android only: start playback and fade it in over `durationMs` while the
+   * simulcast stream fades out. If the player isn't playing yet, the fades
+   * begin once it is. When `disconnectSimulcast` is true (the default) the
+   * stream is disconnected after fading out, and its volume restored for the
+   * next connect. Returns a promise that resolves with { volume, completed }.
+   * It rejects if the player doesn't start playing within 15 seconds (the
+   * player's volume is then restored), or if another crossfade is requested
+   * before this one starts.
+   *
+   * @param {number} durationMs
+   * @param {string} [curve] - defaults to 'equal-power'
+   * @param {boolean} [disconnectSimulcast]
+   */
+  crossfadeFromSimulcast(durationMs, curve = 'equal-power', disconnectSimulcast = true) {
+    if (Platform.OS === 'android') {
+      return RNFMAudioPlayer.crossfadeFromSimulcast(durationMs, curve, !!disconnectSimulcast);
+    }
+
+    this.play();
+    return Promise.resolve({ volume: 1, completed: false });
+  }
+
+  /**
+   * Android only: return promise with { requested, applied, coalesced, fades,
+   * fadesCancelled } counts of volume changes. The native player applies at most one volume change per
+   * display frame, keeping the latest, so fades driven from javascript don't
+   * flood the main thread.
+   */
+  getVolumeStats() {
+    if (Platform.OS === 'android') {
+      return RNFMAudioPlayer.getVolumeStats();
+    }
+
+    return Promise.resolve(null);
+  }
+
+  /**
+   * Read playback progress straight from the native player, without waiting
+   * for an event. This is cheap enough to call on every animation frame (for
+   * a scrubber or waveform, say). Returns:
+   *
+   * {
+   *   elapsed: xx,   // seconds into the current play, advanced to now while playing
+   *   duration: xx,  // seconds in the current play
+   *   playing: true|false,
+   *   sequence: xx   // changes whenever the native player reports progress
+   * }
+   */
+  readProgress() {
+    return RNFMAudioPlayer.readProgress();
+  }
+
+  /**
+   * Turn the native 'elapsed' (and progress anchor) events on or off. Code
+   * that polls `readProgress()` can turn them off so progress no longer
+   * crosses the bridge at all. `elapsedTime` stops advancing while they are off.
+   */
+  setProgressEvents(enabled) {
+    RNFMAudioPlayer.setProgressEvents(enabled);
+  }
+
   /**
    * Return number of seconds of elapsed playback of the current play.
    */
   get elapsedTime() {
     let seconds = this._elapsedPlayTime;
 
+    if (this._progressAnchor) {
+      const anchor = this._progressAnchor;
+      seconds = anchor.elapsed + anchor.rate * (Date.now() - anchor.receivedAt) / 1000;
+    }
+
     return seconds;
   }
 
+  /**
+   * Android only: when enabled, the native player stops sending an event on every
+   * progress tick and instead sends an occasional 'anchor' (on play start, state
+   * change, seek, and every `resyncIntervalMs` milliseconds). `elapsedTime` is then
+   * extrapolated from the latest anchor, and the 'elapsed' event is only
+   * emitted when an anchor arrives.
+   *
+   * @param {boolean} enabled
+   * @param {number} [resyncIntervalMs] - maximum time between anchors (default 5000)
+   */
+  setProgressAnchors(enabled, resyncIntervalMs = 5000) {
+    this.log('client setting progress anchors to ' + enabled);
+
+    if (Platform.OS === 'android') {
+      if (!enabled) {
+        this._progressAnchor = null;
+      }
+      RNFMAudioPlayer.setProgressAnchors(!!enabled, resyncIntervalMs);
+    }
+  }
+
     /**
    * This will trigger a re-request of the available stations.
    * The player will emit a 'session-updated' event after fetching a new station and 
@@ -370,6 +795,50 @@ class AudioPlayer {
 
     }
 
+  /**
+   * Android only: configure the queue that logged events wait in before
+   * they are sent from a background thread.
+   *
+   * @param {string} policy - what to do when the queue is full: 'drop_oldest' (default),
+   *    'drop_newest' or 'block'
+   * @param {number} [capacity] - maximum number of queued events (default 1000)
+   */
+  setLogEventPolicy(policy, capacity = 1000) {
+    if (Platform.OS === 'android') {
+      RNFMAudioPlayer.setLogEventPolicy(policy, capacity);
+    }
+  }
+
+  /**
+   * Android only: configure the on-disk spool that holds logged events while
+   * the player is unavailable (offline). Spooled events survive app restarts
+   * and are replayed, in order, once the player is available again. Events
+   * logged while the player is available are sent right away. Changing the
+   * capacity keeps events already spooled, and disabling the spool still
+   * replays them before the file is deleted.
+   *
+   * @param {boolean} enabled - spooling is enabled by default
+   * @param {number} [capacityBytes] - maximum size of the spool file (default 256KB)
+   * @param {number} [replayEventsPerSecond] - replay rate (default 10)
+   */
+  setLogEventSpool(enabled, capacityBytes = 256 * 1024, replayEventsPerSecond = 10) {
+    if (Platform.OS === 'android') {
+      RNFMAudioPlayer.setLogEventSpool(!!enabled, capacityBytes, replayEventsPerSecond);
+    }
+  }
+
+  /**
+   * Android only: return promise with counters for logged events:
+   * { enqueued, dropped, flushed, batches, spooled, replayed, queued, capacity, policy }
+   */
+  getLogEventStats() {
+    if (Platform.OS === 'android') {
+      return RNFMAudioPlayer.getLogEventStats();
+    }
+
+    return Promise.resolve(null);
+  }
+
   /**
    * Return the list of available music stations to pull music from. This
    * will be undefined until the player has announce that it is available.
@@ -378,11 +847,67 @@ class AudioPlayer {
     return this._stations;
   }
 
+  /**
+   * Return promise with the stations whose options match every key/value
+   * pair in the given filter, for example `{ genre: 'rock' }`. Values are
+   * compared as strings. On Android the matching is done natively, from an
+   * index that is rebuilt whenever the station list changes.
+   *
+   * @param {Object} filter - option keys and the values they must have
+   */
+  getStationsMatching(filter) {
+    const stations = this._stations || [];
+
+    if (Platform.OS === 'android') {
+      return RNFMAudioPlayer.getStationsMatching(filter).then((ids) =>
+        ids.map((id) => stations.find((station) => station.id === id)).filter((station) => station));
+    }
+
+    return Promise.resolve(stations.filter((station) =>
+      Object.keys(filter).every((key) =>
+        station.options && (station.options[key] !== undefined) && (String(station.options[key]) === String(filter[key])))));
+  }
+
+  /**
+   * Receives a bundle of native events, in the order they were sent, when
+   * event batching is enabled.
+   *
+   * The object passed in looks like:
+   * {
+   *   events: [ { name: 'state-change', params: { ... } }, ... ]
+   * }
+   */
+  onEventBatch({ events }) {
+    events.forEach(({ name, params }) => {
+      const handler = this._nativeHandlers[name];
+      if (handler) {
+        handler(params || {});
+      }
+    });
+  }
+
   onElapse({ elapsed }) {
     this._elapsedPlayTime = elapsed;
     this._emitter.emit('elapsed', elapsed);
   }
 
+  /**
+   * Receives 'progress-anchor' event from native code, when progress anchors
+   * are enabled.
+   *
+   * The object passed in looks like:
+   * {
+   *   elapsed: xx,   // seconds of elapsed playback at 'timestamp'
+   *   timestamp: xx, // monotonic native time, in milliseconds
+   *   rate: xx       // 1 while playing, 0 otherwise
+   * }
+   */
+  onProgressAnchor({ elapsed, timestamp, rate }) {
+    this._progressAnchor = { elapsed, timestamp, rate, receivedAt: Date.now() };
+    this._elapsedPlayTime = elapsed;
+    this._emitter.emit('elapsed', elapsed);
+  }
+
   /**
    * Receives 'availability' event from native player. This event includes the
    * list of stations the player has received and the currently active station.
@@ -399,12 +924,33 @@ class AudioPlayer {
    * and clears it it out.
    */
   onAvailability(props) {
+    if (props.provisional) {
+      // cached from the last run - usable for display until the player confirms
+      this.log('Showing cached stations until the player is available');
+      this._provisional = true;
+      this._stations = props.stations;
+      this._activeStation = this._stations.find((station) => station.id === props.activeStationId);
+      this._clientID = props.clientID;
+
+      this._emitter.emit('provisional-availability', this._stations, this);
+      return;
+    }
+
     let available = this._available = props.available;
-    
+
+    if (!available && this._provisional) {
+      this._stations = [];
+      this._activeStation = undefined;
+      this._clientID = undefined;
+    }
+    this._provisional = false;
+
     if (available) {
       this.log('Music is available');
-      this._stations = props.stations;
-      this._activeStation = props.stations.find((station) => station.id === props.activeStationId);
+      if (props.stations) {
+        this._stations = props.stations;
+      }
+      this._activeStation = this._stations.find((station) => station.id === props.activeStationId);
       this._clientID = props.clientID;
     }
 
@@ -415,19 +961,68 @@ class AudioPlayer {
     }
   }
 
+  /**
+   * Receives 'metadata-cache-reset' from native code, after which every
+   * audio file's details are sent in full again.
+   */
+  onMetadataCacheReset() {
+    this._playCache.clear();
+  }
+
+  onQoeSummary(props) {
+    this._emitter.emit('qoe-summary', props, this);
+  }
+
   onMusicQueued(props) {
     this.log('Music is queued');
     this._emitter.emit('musicQueued');
   }
 
   onSessionUpdated(props) {
-    this._stations = props.stations;
-    this._activeStation = props.stations.find((station) => station.id === props.activeStationId);
+    if (props.stations) {
+      this._stations = props.stations;
+    }
+    this._activeStation = this._stations.find((station) => station.id === props.activeStationId);
     this._clientID = props.clientID;
 
     this._emitter.emit('session-updated', props.clientID, this);
   }
 
+  /**
+   * Receives 'stations-diff' event from native code. After the first full
+   * station list, the native player only sends the stations that changed since
+   * the last list it sent. This event always precedes the 'availability' or
+   * 'session-updated' event it belongs to.
+   *
+   * The object passed in looks like:
+   * {
+   *   added: [ { ... }, ... ],
+   *   changed: [ { ... }, ... ],
+   *   removed: [ XX, ... ],
+   *   order: [ XX, ... ] // optional - station ids in their new order
+   * }
+   */
+  onStationsDiff(props) {
+    const byId = new Map();
+    (this._stations || []).forEach((station) => byId.set(station.id, station));
+
+    props.removed.forEach((id) => byId.delete(id));
+    props.changed.forEach((station) => byId.set(station.id, station));
+
+    let stations;
+    if (props.order) {
+      props.added.forEach((station) => byId.set(station.id, station));
+      stations = props.order.map((id) => byId.get(id)).filter((station) => station);
+    } else {
+      stations = (this._stations || [])
+        .filter((station) => byId.has(station.id))
+        .map((station) => byId.get(station.id))
+        .concat(props.added);
+    }
+
+    this._stations = stations;
+  }
+
   /**
    * Receives event from native code indicating that the state of the player has
    * changed.
@@ -492,7 +1087,25 @@ class AudioPlayer {
      */
 
   onPlayStarted(props) {
-    const play = props.play;
+    let play = props.play;
+
+    if (play.metadata_evicted) {
+      play.metadata_evicted.forEach((id) => this._playCache.delete(id));
+      delete play.metadata_evicted;
+    }
+
+    if (play.metadata_cache === 'hit') {
+      const cached = this._playCache.get(play.id);
+      if (cached) {
+        play = { ...cached, ...play };
+      } else {
+        this.log('no cached details for audio file ' + play.id);
+      }
+    } else if (play.metadata_cache === 'miss') {
+      const { id, title, artist, album, duration, metadata } = play;
+      this._playCache.set(play.id, { id, title, artist, album, duration, metadata });
+    }
+    delete play.metadata_cache;
 
     this._currentPlay = play;
 
@@ -507,6 +1120,9 @@ class AudioPlayer {
 
     // reset elapsed time counters
     this._elapsedPlayTime = 0;
+    if (this._progressAnchor) {
+      this._progressAnchor = { ...this._progressAnchor, elapsed: 0, receivedAt: Date.now() };
+    }
     this._emitter.emit('play-started', this._currentPlay, this);
   }
 
@@ -1,7 +1,10 @@
-import { NativeModules, NativeEventEmitter } from 'react-native';
+import { NativeModules, NativeEventEmitter, Platform } from 'react-native';
 import { useState, useEffect } from 'react'
 const { RNFMSimulcastStreamer } = NativeModules;
 
+// native events are named '<module>:<event>'
+const EVENT_PREFIX = 'RNFMSimulcastStreamer:';
+
 /**
  * Create a simulcast streamer and return its state and state modifier.
  * 
@@ -50,7 +53,45 @@ const { RNFMSimulcastStreamer } = NativeModules;
  *               If you don't expect users to be switching IP addresses, then
  *               not setting this argument to 'true' can speed up music start
  *               time after a connect() call.
- * - setVolume(xx) - adjust the playback volume from 0..1
+ * - preconnect(token?, timeoutMs?) - Android only. Connect to the stream in
+ *               the background, muted, so that a later connect() starts
+ *               audio right away. The state stays 'IDLE' until connect().
+ *               The stream is dropped if connect() isn't called within
+ *               timeoutMs (default 60 seconds).
+ * - getStartupStats() - Android only. Promise with connect() to 'PLAYING'
+ *               latency for 'cold' and 'warm' (preconnected) starts, and
+ *               'savedMsP50', the median time saved by preconnect().
+ * - setVolume(xx) - adjust the playback volume from 0..1. On Android, the
+ *               native side applies at most one change per display frame,
+ *               keeping the latest.
+ * - fadeTo(target, durationMs, curve?) - Android only. Ramp the volume to
+ *               target natively over durationMs ('linear', 'ease-in', 'ease-out'
+ *               or 'equal-power'). Returns a promise with { volume, completed };
+ *               'volume' in the state is updated when the ramp ends.
+ * - getVolumeStats() - Android only. Promise with { requested, applied,
+ *               coalesced, fades, fadesCancelled } counts of volume changes.
+ * - setProgressAnchors(enabled, resyncIntervalMs?) - Android only. When enabled,
+ *               the native streamer stops sending per-tick progress and
+ *               'currentPlay.elapsed_seconds' is only updated on play start,
+ *               state changes and every resyncIntervalMs. Use
+ *               getElapsedSeconds() to read the extrapolated value.
+ * - getElapsedSeconds() - seconds of elapsed playback of the current play
+ * - getQoeSnapshot() - Android only. Promise with playback quality figures
+ *               (startup latency, stall count and duration, rebuffer ratio)
+ *               for this session and for each stream played in it.
+ * - setQoeSummaryInterval(intervalMs) - Android only. Every intervalMs the
+ *               session figures are stored in the 'qoe' property of the
+ *               state. Pass 0 to stop.
+ * - setReconnectPolicy({ enabled, stallThresholdMs, baseDelayMs, maxDelayMs,
+ *               maxAttempts }) - Android only. A stream that stalls for
+ *               stallThresholdMs (default 8s), or drops or fails while it
+ *               should be playing, is reconnected after a backoff delay
+ *               that doubles from baseDelayMs (1s) up to maxDelayMs (30s),
+ *               with jitter, at most maxAttempts (5) times in a row. Progress
+ *               is stored in the 'reconnect' property of the state as
+ *               { status: 'scheduled' | 'recovered' | 'failed', attempt, ... }.
+ * - getReconnectStats() - Android only. Promise with { reconnects,
+ *               recoveries, failures, recoveryMs, longestRecoveryMs, ... }.
  * - switchStream(token) - disconnect from the current stream and switch
  *               to a new one. If music was playing while switchStream()
  *               is called, then an automatic 'connect()' will be called after
@@ -71,7 +112,15 @@ export default function useSimulcastStreamer(token = null) {
     // create new streamer object and subscribe to events
     const nativeEmitter = new NativeEventEmitter(RNFMSimulcastStreamer);
 
-    const stateListener = nativeEmitter.addListener('state-change', ({ state }) => {
+    // remember handlers so events bundled in an 'event-batch' reach them too;
+    // native event names are prefixed with the module name
+    const handlers = {};
+    const listen = (event, handler) => {
+      handlers[event] = handler;
+      return nativeEmitter.addListener(EVENT_PREFIX + event, handler);
+    };
+
+    const stateListener = listen('state-change', ({ state }) => {
       setStreamerState((streamerState) => {
         let readableState;
         let currentPlay = streamerState.currentPlay;
@@ -114,7 +163,7 @@ export default function useSimulcastStreamer(token = null) {
       });
     });
 
-    const playStartedListener = nativeEmitter.addListener('play-started', ({ play }) => {
+    const playStartedListener = listen('play-started', ({ play }) => {
       //console.log('play-started event', play);
 
       if (play) {
@@ -140,7 +189,7 @@ export default function useSimulcastStreamer(token = null) {
 
     });
 
-    const elapseListener = nativeEmitter.addListener('elapse', ({ elapsed }) => {
+    const elapseListener = listen('elapse', ({ elapsed }) => {
       setStreamerState((streamerState) => {
         if (streamerState.currentPlay) {
           return {
@@ -157,7 +206,42 @@ export default function useSimulcastStreamer(token = null) {
       });
     });
 
-    const errorListener = nativeEmitter.addListener('error', (params) => {
+    const progressAnchorListener = listen('progress-anchor', ({ elapsed, rate }) => {
+      setStreamerState((streamerState) => {
+        if (streamerState.currentPlay) {
+          return {
+            ...streamerState,
+
+            currentPlay: {
+              ...streamerState.currentPlay,
+              elapsed_seconds: elapsed,
+              elapsed_anchor: { elapsed, rate, receivedAt: Date.now() }
+            }
+          };
+        } else {
+          return streamerState;
+        }
+      });
+    });
+
+    const reconnectListener = listen('reconnect', (reconnect) => {
+      setStreamerState((streamerState) => ({
+        ...streamerState,
+
+        reconnect: reconnect,
+        tryingToPlay: (reconnect.status === 'failed') ? false : streamerState.tryingToPlay
+      }));
+    });
+
+    const qoeSummaryListener = listen('qoe-summary', (summary) => {
+      setStreamerState((streamerState) => ({
+        ...streamerState,
+
+        qoe: summary
+      }));
+    });
+
+    const errorListener = listen('error', (params) => {
       // this is never triggered in current implementation (!!)
       //console.log('error!', params);
 
@@ -171,6 +255,14 @@ export default function useSimulcastStreamer(token = null) {
       }
     });
 
+    const batchListener = nativeEmitter.addListener(EVENT_PREFIX + 'event-batch', ({ events }) => {
+      events.forEach(({ name, params }) => {
+        if (handlers[name]) {
+          handlers[name](params || {});
+        }
+      });
+    });
+
     if (token) {
       //console.log("initializing with token", token);
 
@@ -186,7 +278,11 @@ export default function useSimulcastStreamer(token = null) {
     return () => {
       //console.log('quitting');
 
+      batchListener.remove();
       errorListener.remove();
+      qoeSummaryListener.remove();
+      reconnectListener.remove();
+      progressAnchorListener.remove();
       elapseListener.remove();
       playStartedListener.remove();
       stateListener.remove();
@@ -289,6 +385,111 @@ export default function useSimulcastStreamer(token = null) {
 
         volume: volume
       }));
+    },
+
+    preconnect: (token, timeoutMs = 0) => {
+      token = token || streamerState.token;
+
+      if (!token || (Platform.OS !== 'android')) {
+        return;
+      }
+
+      if (token !== streamerState.token) {
+        setStreamerState((streamerState) => ({
+          ...streamerState,
+
+          token: token,
+          state: 'INITIALIZING'
+        }));
+      }
+
+      RNFMSimulcastStreamer.preconnect(token, timeoutMs);
+    },
+
+    setReconnectPolicy: ({ enabled = true, stallThresholdMs = 0, baseDelayMs = 0, maxDelayMs = 0, maxAttempts = 0 } = {}) => {
+      if (Platform.OS === 'android') {
+        RNFMSimulcastStreamer.setReconnectPolicy(!!enabled, stallThresholdMs, baseDelayMs, maxDelayMs, maxAttempts);
+      }
+    },
+
+    getReconnectStats: () => {
+      if (Platform.OS === 'android') {
+        return RNFMSimulcastStreamer.getReconnectStats();
+      }
+
+      return Promise.resolve(null);
+    },
+
+    getStartupStats: () => {
+      if (Platform.OS === 'android') {
+        return RNFMSimulcastStreamer.getStartupStats();
+      }
+
+      return Promise.resolve(null);
+    },
+
+    fadeTo: (target, durationMs, curve = 'linear') => {
+      if (Platform.OS !== 'android') {
+        setStreamerState((streamerState) => ({
+          ...streamerState,
+
+          volume: target
+        }));
+
+        return Promise.resolve({ volume: target, completed: true });
+      }
+
+      return RNFMSimulcastStreamer.fadeTo(target, durationMs, curve).then((result) => {
+        setStreamerState((streamerState) => ({
+          ...streamerState,
+
+          volume: result.volume
+        }));
+
+        return result;
+      });
+    },
+
+    getVolumeStats: () => {
+      if (Platform.OS === 'android') {
+        return RNFMSimulcastStreamer.getVolumeStats();
+      }
+
+      return Promise.resolve(null);
+    },
+
+    setProgressAnchors: (enabled, resyncIntervalMs = 5000) => {
+      if (Platform.OS === 'android') {
+        RNFMSimulcastStreamer.setProgressAnchors(!!enabled, resyncIntervalMs);
+      }
+    },
+
+    getQoeSnapshot: () => {
+      if (Platform.OS === 'android') {
+        return RNFMSimulcastStreamer.getQoeSnapshot();
+      }
+
+      return Promise.resolve(null);
+    },
+
+    setQoeSummaryInterval: (intervalMs) => {
+      if (Platform.OS === 'android') {
+        RNFMSimulcastStreamer.setQoeSummaryInterval(intervalMs);
+      }
+    },
+
+    getElapsedSeconds: () => {
+      const currentPlay = streamerState.currentPlay;
+      if (!currentPlay) {
+        return 0;
+      }
+
+      const anchor = currentPlay.elapsed_anchor;
+      if (!anchor) {
+        return currentPlay.elapsed_seconds;
+      }
+
+      return anchor.elapsed + anchor.rate * (Date.now() - anchor.receivedAt) / 1000;
     }
   }];
 }